@@ -0,0 +1,138 @@
+package edu.usc.teamcore.tagger.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.util.FileSystemUtils;
+
+import edu.usc.teamcore.tagger.config.ExecutorConfig;
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.service.BoundingBoxesManager;
+import edu.usc.teamcore.tagger.service.BrightestBlobTrackingEngine;
+import edu.usc.teamcore.tagger.service.ConnectedComponentManager;
+import edu.usc.teamcore.tagger.service.FrameCache;
+import edu.usc.teamcore.tagger.service.FrameReader;
+import edu.usc.teamcore.tagger.service.MatPool;
+import edu.usc.teamcore.tagger.service.MetricsRegistry;
+import edu.usc.teamcore.tagger.service.OpenCv;
+import edu.usc.teamcore.tagger.service.PixelTransferManager;
+import edu.usc.teamcore.tagger.service.TemplateTrackingEngine;
+import edu.usc.teamcore.tagger.service.ThresholdTrackingEngine;
+import edu.usc.teamcore.tagger.service.TrackingEngine;
+import edu.usc.teamcore.tagger.service.TrackingEngines;
+
+/**
+ * Tracks a box between two synthetic 640x480 frames with each tracking
+ * engine, from reading the region to converting its position back to frame
+ * coordinates. Boxes past box-area-max-size (50) are not tracked by
+ * getTranslatedBoxVal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BoxTrackingBenchmark {
+
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+	private static final int BUFFER = 15;
+
+	@Param({ "10", "30", "50", "80" })
+	private int box;
+
+	@Param({ "0.01", "0.1", "0.5" })
+	private double density;
+
+	@Param({ ThresholdTrackingEngine.NAME, TemplateTrackingEngine.NAME, BrightestBlobTrackingEngine.NAME })
+	private String engine;
+
+	private File dir;
+	private AnnotationConfigApplicationContext context;
+	private BoundingBoxesManager manager;
+	private String prevFile;
+	private String currFile;
+	private String bounds;
+	private String bufferedBounds;
+	private TrackingEngine trackingEngine;
+
+	@Setup
+	public void setUp() throws IOException {
+		OpenCv.load();
+		dir = Files.createTempDirectory("box-tracking").toFile();
+		File videoDir = new File(dir, "vid");
+		videoDir.mkdirs();
+		prevFile = writeFrame(videoDir, 0, 1);
+		currFile = writeFrame(videoDir, 1, 2);
+
+		TaggingConfig conf = new TaggingConfig();
+		conf.setBoxPixelThreshold(200L);
+		conf.setBoxAreaMaxSize(50);
+		conf.setFrameCacheMaxBytes(256L * 1024 * 1024);
+		conf.setRoiDecodeMaxFraction(0.25);
+		conf.setTrackingTimeoutMillis(5000L);
+		conf.setTrackingLogSampleRate(100);
+		conf.setTrackingEngine(engine);
+		conf.setVideos(Collections.emptyList());
+		context = new AnnotationConfigApplicationContext();
+		context.getBeanFactory().registerSingleton("taggingConfig", conf);
+		context.getBeanFactory().registerSingleton(ExecutorConfig.TRACKING_EXECUTOR, new SimpleAsyncTaskExecutor());
+		context.register(FrameCache.class, FrameReader.class, MatPool.class, PixelTransferManager.class,
+				ConnectedComponentManager.class, MetricsRegistry.class, ThresholdTrackingEngine.class,
+				TemplateTrackingEngine.class, BrightestBlobTrackingEngine.class, TrackingEngines.class,
+				BoundingBoxesManager.class);
+		context.refresh();
+		manager = context.getBean(BoundingBoxesManager.class);
+		trackingEngine = context.getBean(TrackingEngines.class).get(engine);
+
+		int x = (WIDTH - box) / 2, y = (HEIGHT - box) / 2;
+		bounds = x + "," + y + "," + box + "," + box;
+		bufferedBounds = (x - BUFFER) + "," + (y - BUFFER) + "," + (box + 2 * BUFFER) + "," + (box + 2 * BUFFER);
+	}
+
+	private String writeFrame(File videoDir, int index, long seed) {
+		Mat frame = SyntheticFrames.mat(WIDTH, HEIGHT, SyntheticFrames.pixels(WIDTH, HEIGHT, density, seed));
+		String path = new File(videoDir, String.format("vid_%010d.jpg", index)).getPath();
+		Highgui.imwrite(path, frame);
+		frame.release();
+		return path;
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+		FileSystemUtils.deleteRecursively(dir);
+	}
+
+	@Benchmark
+	public List<Integer> getBoxPositionForImg() throws IOException {
+		return manager.getBoxPositionForImg(prevFile, currFile, bounds, bufferedBounds, trackingEngine);
+	}
+
+	@Benchmark
+	public String getTranslatedBoxVal() throws IOException {
+		return manager.getTranslatedBoxVal(prevFile, currFile, bounds, BUFFER);
+	}
+
+}
@@ -0,0 +1,52 @@
+package edu.usc.teamcore.tagger.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.usc.teamcore.tagger.service.ConnectedComponentManager;
+
+/**
+ * Labels the thresholded search region of a box. Sizes are the side of the
+ * buffered region, up to and past box-area-max-size (50) plus the buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConnectedComponentBenchmark {
+
+	@Param({ "20", "50", "80", "160" })
+	private int size;
+
+	@Param({ "0.01", "0.1", "0.5" })
+	private double density;
+
+	private final ConnectedComponentManager manager = new ConnectedComponentManager();
+
+	private byte[] pixels;
+
+	@Setup
+	public void setUp() {
+		pixels = SyntheticFrames.binaryPixels(size, size, density, 42);
+	}
+
+	@Benchmark
+	public List<Integer> findConnectedComponent() {
+		return manager.findConnectedComponent(pixels, size, size);
+	}
+
+}
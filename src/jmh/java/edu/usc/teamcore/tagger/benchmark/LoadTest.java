@@ -0,0 +1,358 @@
+package edu.usc.teamcore.tagger.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.usc.teamcore.tagger.TaggerApplication;
+import edu.usc.teamcore.tagger.config.SecurityConfig;
+import edu.usc.teamcore.tagger.config.SecurityConfig.User;
+import edu.usc.teamcore.tagger.service.FrameNames;
+import edu.usc.teamcore.tagger.service.OpenCv;
+
+/**
+ * Runs the tagger in-process on synthetic videos and option files, and
+ * drives it with concurrent simulated annotators for a while, then reports
+ * the throughput and latency of each endpoint.
+ * <p>
+ * Labelers load the config, track every blob of a video across a few frames
+ * through /data/box and save the boxes to /data. Reviewers load the config,
+ * list the labels of a video, read one and save it to /data/review.
+ * <p>
+ * Options, with their defaults, are given as {@code --name=value}; any
+ * other argument is passed to the application, e.g.
+ * {@code --tagging.tracking-pool-size=8}.
+ */
+public class LoadTest {
+
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+	static {
+		DEFAULTS.put("videos", "20");
+		DEFAULTS.put("frames", "100");
+		DEFAULTS.put("width", "640");
+		DEFAULTS.put("height", "480");
+		DEFAULTS.put("blobs", "3");
+		DEFAULTS.put("entries", "5000");
+		DEFAULTS.put("annotators", "20");
+		DEFAULTS.put("reviewers", "0.3");
+		DEFAULTS.put("tracked-frames", "10");
+		DEFAULTS.put("buffer-size", "15");
+		DEFAULTS.put("think-millis", "0");
+		DEFAULTS.put("warmup-seconds", "10");
+		DEFAULTS.put("seconds", "60");
+		DEFAULTS.put("dir", "");
+	}
+
+	private static final String REVIEW = "Review";
+
+	private final Map<String, String> options;
+	private final SyntheticVideos synthetic;
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private String baseUrl;
+	private List<User> users;
+
+	/** Latencies in microseconds and errors by endpoint, replaced after warming up. */
+	private volatile ConcurrentMap<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+	private volatile boolean running = true;
+
+	private static class EndpointStats {
+
+		private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+		private final LongAdder errors = new LongAdder();
+
+	}
+
+	private LoadTest(Map<String, String> options) {
+		this.options = options;
+		this.synthetic = new SyntheticVideos(option("videos"), option("frames"), option("width"), option("height"),
+				option("blobs"));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+		List<String> appArgs = new ArrayList<>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			String name = arg.startsWith("--") && equals > 0 ? arg.substring(2, equals) : null;
+			if (name != null && DEFAULTS.containsKey(name)) {
+				options.put(name, arg.substring(equals + 1));
+			}
+			else {
+				appArgs.add(arg);
+			}
+		}
+		new LoadTest(options).run(appArgs);
+	}
+
+	private int option(String name) {
+		return Integer.parseInt(options.get(name));
+	}
+
+	private void run(List<String> appArgs) throws Exception {
+		OpenCv.load();
+		boolean keep = !options.get("dir").isEmpty();
+		Path dir = keep ? Paths.get(options.get("dir")) : Files.createTempDirectory("tagger-load");
+		Path videosDir = dir.resolve("videos");
+		Path outputDir = dir.resolve("output");
+		try {
+			generate(videosDir, outputDir);
+
+			List<String> args = new ArrayList<>();
+			args.add("--server.port=0");
+			args.add("--tagging.videos-dir=" + videosDir + "/");
+			args.add("--tagging.output-dir=" + outputDir + "/");
+			// Log as in production, which the benchmark logging config does not
+			args.add("--logging.level.edu.usc.teamcore.tagger=INFO");
+			args.addAll(appArgs);
+			try (ConfigurableApplicationContext context = SpringApplication.run(TaggerApplication.class,
+					args.toArray(new String[args.size()]))) {
+				baseUrl = "http://localhost:"
+						+ ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+				users = context.getBean(SecurityConfig.class).getUsers();
+				drive();
+			}
+		}
+		finally {
+			if (!keep) {
+				FileSystemUtils.deleteRecursively(dir.toFile());
+			}
+		}
+	}
+
+	private void generate(Path videosDir, Path outputDir) throws IOException {
+		long start = System.currentTimeMillis();
+		if (Files.exists(videosDir)) {
+			System.out.println("Using the videos in " + videosDir);
+		}
+		else {
+			synthetic.writeFrames(videosDir);
+		}
+		Files.createDirectories(outputDir);
+		int entries = option("entries");
+		synthetic.writeOptionFile(outputDir.resolve("output.csv"), entries, false);
+		synthetic.writeOptionFile(outputDir.resolve("review.csv"), entries / 2, true);
+		synthetic.writeOptionFile(outputDir.resolve("final-review.csv"), entries / 4, true);
+		System.out.printf("Generated %d videos of %d frames and %d labels (%d MB) in %d ms%n",
+				synthetic.getVideos().size(), synthetic.getFrames(), entries,
+				Files.size(outputDir.resolve("output.csv")) >> 20, System.currentTimeMillis() - start);
+	}
+
+	private void drive() throws InterruptedException {
+		int annotators = option("annotators");
+		int reviewers = (int) Math.round(annotators * Double.parseDouble(options.get("reviewers")));
+		System.setProperty("http.maxConnections", Integer.toString(annotators));
+		ExecutorService executor = Executors.newFixedThreadPool(annotators);
+		for (int i = 0; i < annotators; i++) {
+			boolean reviewer = i < reviewers;
+			Client client = new Client(users.get(i % users.size()));
+			Random random = new Random(i);
+			executor.execute(() -> {
+				while (running) {
+					try {
+						if (reviewer) {
+							review(client, random);
+						}
+						else {
+							label(client, random);
+						}
+					}
+					catch (IOException e) {
+						// Counted by the client
+					}
+				}
+			});
+		}
+		System.out.printf("Running %d labelers and %d reviewers against %s%n", annotators - reviewers, reviewers,
+				baseUrl);
+
+		TimeUnit.SECONDS.sleep(option("warmup-seconds"));
+		stats = new ConcurrentHashMap<>();
+		long start = System.nanoTime();
+		TimeUnit.SECONDS.sleep(option("seconds"));
+		Map<String, EndpointStats> measured = stats;
+		stats = new ConcurrentHashMap<>();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		running = false;
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		report(new TreeMap<>(measured), seconds);
+	}
+
+	/** Tracks every blob across a few frames and saves the boxes. */
+	private void label(Client client, Random random) throws IOException {
+		client.request("GET", "/config", Collections.emptyMap(), null);
+		int video = random.nextInt(synthetic.getVideos().size());
+		String directory = synthetic.getVideos().get(video);
+		int tracked = Math.min(option("tracked-frames"), synthetic.getFrames() - 1);
+		int first = 1 + random.nextInt(synthetic.getFrames() - tracked);
+		for (int i = first; i < first + tracked; i++) {
+			for (int b = 0; b < synthetic.getBlobs(); b++) {
+				Map<String, String> headers = new LinkedHashMap<>();
+				headers.put("prevFilename", FrameNames.relativePath(directory, i - 1));
+				headers.put("currFilename", FrameNames.relativePath(directory, i));
+				headers.put("bounds", SyntheticVideos.bounds(synthetic.box(video, b, i - 1)));
+				headers.put("bufferSize", options.get("buffer-size"));
+				client.request("GET", "/data/box", headers, null);
+			}
+		}
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put("X-fileName", directory);
+		headers.put("X-userAgent", SyntheticVideos.USER_AGENT);
+		client.request("POST", "/data", headers, synthetic.frameMap(video, first - 1, first + tracked));
+	}
+
+	/** Lists the labels of a video, reads one and saves it as reviewed. */
+	private void review(Client client, Random random) throws IOException {
+		client.request("GET", "/config", Collections.emptyMap(), null);
+		String directory = synthetic.getVideos().get(random.nextInt(synthetic.getVideos().size()));
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put("X-fileName", directory);
+		headers.put("X-optionName", REVIEW);
+		List<String> entryTimes = mapper.readValue(client.request("GET", "/data/list", headers, null),
+				new TypeReference<List<String>>() {});
+		if (entryTimes.isEmpty()) {
+			return;
+		}
+		headers.put("X-entryTime", entryTimes.get(random.nextInt(entryTimes.size())));
+		String data = client.request("GET", "/data", headers, null);
+		headers.put("X-userAgent", SyntheticVideos.USER_AGENT);
+		client.request("POST", "/data/review", headers, data);
+	}
+
+	private void report(Map<String, EndpointStats> measured, double seconds) {
+		System.out.printf("%n%-18s %9s %7s %9s %9s %9s %9s%n", "Endpoint", "Requests", "Errors", "Req/s", "p50 ms",
+				"p99 ms", "Max ms");
+		long total = 0;
+		for (Map.Entry<String, EndpointStats> entry : measured.entrySet()) {
+			long[] latencies;
+			synchronized (entry.getValue().latencies) {
+				latencies = entry.getValue().latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+			}
+			total += latencies.length;
+			System.out.printf("%-18s %9d %7d %9.1f %9.2f %9.2f %9.2f%n", entry.getKey(), latencies.length,
+					entry.getValue().errors.sum(), latencies.length / seconds, quantile(latencies, 0.5) / 1e3,
+					quantile(latencies, 0.99) / 1e3, quantile(latencies, 1) / 1e3);
+		}
+		System.out.printf("%-18s %9d %7s %9.1f%n", "Total", total, "", total / seconds);
+	}
+
+	private static long quantile(long[] sorted, double quantile) {
+		return sorted.length == 0 ? 0 : sorted[Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1)];
+	}
+
+	/**
+	 * An annotator's connection, authenticated as one user, which keeps the
+	 * session the server gives it as a browser would.
+	 */
+	private class Client {
+
+		private final String authorization;
+		private String sessionCookie;
+
+		private Client(User user) {
+			authorization = "Basic " + Base64.getEncoder()
+					.encodeToString((user.getName() + ":" + user.getPassword()).getBytes(StandardCharsets.UTF_8));
+		}
+
+		/** Returns the response body, recording the request under its endpoint. */
+		private String request(String method, String path, Map<String, String> headers, String body)
+				throws IOException {
+			EndpointStats endpoint = stats.computeIfAbsent(method + " " + path, name -> new EndpointStats());
+			long start = System.nanoTime();
+			try {
+				HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+				connection.setRequestMethod(method);
+				connection.setRequestProperty("Authorization", authorization);
+				if (sessionCookie != null) {
+					connection.setRequestProperty("Cookie", sessionCookie);
+				}
+				headers.forEach(connection::setRequestProperty);
+				if (body != null) {
+					connection.setDoOutput(true);
+					connection.setRequestProperty("Content-Type", "application/json");
+					try (OutputStream out = connection.getOutputStream()) {
+						out.write(body.getBytes(StandardCharsets.UTF_8));
+					}
+				}
+				int status = connection.getResponseCode();
+				String cookie = connection.getHeaderField("Set-Cookie");
+				if (cookie != null) {
+					sessionCookie = cookie.split(";", 2)[0];
+				}
+				String response = read(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+				if (status >= 400) {
+					throw new IOException(method + " " + path + " returned " + status);
+				}
+				return response;
+			}
+			catch (IOException e) {
+				endpoint.errors.increment();
+				throw e;
+			}
+			finally {
+				endpoint.latencies.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+				think();
+			}
+		}
+
+		private String read(InputStream in) throws IOException {
+			if (in == null) {
+				return "";
+			}
+			try (InputStream stream = in) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				for (int read; (read = stream.read(buffer)) > 0;) {
+					out.write(buffer, 0, read);
+				}
+				return new String(out.toByteArray(), StandardCharsets.UTF_8);
+			}
+		}
+
+		private void think() {
+			if (option("think-millis") == 0) {
+				return;
+			}
+			try {
+				Thread.sleep(option("think-millis"));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,119 @@
+package edu.usc.teamcore.tagger.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import com.opencsv.CSVWriter;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.service.MetricsRegistry;
+import edu.usc.teamcore.tagger.service.OptionFileIndex;
+import edu.usc.teamcore.tagger.service.OptionFileStore;
+
+/**
+ * The lookups behind /data/list and the entry fetch of /data, against
+ * option files of 1K to 1M entries, 20 to 100K entries per video.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OptionFileLookupBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	private int entries;
+
+	@Param({ "20", "1000", "100000" })
+	private int entriesPerVideo;
+
+	private File dir;
+	private String file;
+	private int videos;
+	private AnnotationConfigApplicationContext context;
+	private OptionFileStore store;
+
+	@Setup
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("option-file").toFile();
+		file = new File(dir, "output.csv").getPath();
+		videos = Math.max(1, entries / entriesPerVideo);
+		try (CSVWriter writer = new CSVWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			for (int i = 0; i < entries; i++) {
+				writer.writeNext(new String[] { video(i % videos), entryTime(i / videos), "Mozilla/5.0",
+						"{\"format\":\"tracks\",\"tracks\":[{\"label\":\"Human\",\"start\":" + i % 500
+								+ ",\"boxes\":[[\"312,228,12,14\",40]]}]}", "admin" });
+			}
+		}
+
+		TaggingConfig conf = new TaggingConfig();
+		conf.setOptions(Collections.emptyList());
+		conf.setJournalQueueCapacity(1024);
+		conf.setJournalMaxBatch(256);
+		conf.setJournalForce(false);
+		conf.setSaveTimeoutMillis(30000L);
+		context = new AnnotationConfigApplicationContext();
+		context.getBeanFactory().registerSingleton("taggingConfig", conf);
+		context.register(MetricsRegistry.class, OptionFileStore.class);
+		context.refresh();
+		store = context.getBean(OptionFileStore.class);
+		store.list(file, video(0));
+	}
+
+	private static String video(int i) {
+		return String.format("%010d_%010d", i, i % 7);
+	}
+
+	private static String entryTime(int i) {
+		return "Mon Jan 02 10:" + String.format("%02d:%02d", i / 60 % 60, i % 60) + " PST 2017";
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+		FileSystemUtils.deleteRecursively(dir);
+	}
+
+	@Benchmark
+	public List<String> list() throws IOException {
+		return store.list(file, video(ThreadLocalRandom.current().nextInt(videos)));
+	}
+
+	@Benchmark
+	public String[] read() throws IOException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return store.read(file, video(random.nextInt(videos)), entryTime(random.nextInt(entries / videos)));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public OptionFileIndex buildIndex() throws IOException {
+		return OptionFileIndex.build(new File(file).toPath());
+	}
+
+}
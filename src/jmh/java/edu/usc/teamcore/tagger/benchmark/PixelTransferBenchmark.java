@@ -0,0 +1,57 @@
+package edu.usc.teamcore.tagger.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.usc.teamcore.tagger.service.OpenCv;
+import edu.usc.teamcore.tagger.service.PixelTransferManager;
+
+/**
+ * Copies a thresholded region out of its Mat, the step that used to be
+ * {@code convertMatToArray}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PixelTransferBenchmark {
+
+	@Param({ "20", "50", "80", "160" })
+	private int size;
+
+	private final PixelTransferManager manager = new PixelTransferManager();
+
+	private Mat mat;
+
+	@Setup
+	public void setUp() {
+		OpenCv.load();
+		mat = SyntheticFrames.mat(size, size, SyntheticFrames.binaryPixels(size, size, 0.1, 42));
+	}
+
+	@TearDown
+	public void tearDown() {
+		mat.release();
+	}
+
+	@Benchmark
+	public byte[] toBytes() {
+		return manager.toBytes(mat);
+	}
+
+}
@@ -0,0 +1,47 @@
+package edu.usc.teamcore.tagger.benchmark;
+
+import java.util.Random;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Synthetic benchmark inputs: frames of dark noise with a given share of
+ * bright pixels, as a thermal camera sees warm bodies on a cold background.
+ */
+final class SyntheticFrames {
+
+	private SyntheticFrames() {
+	}
+
+	/**
+	 * Returns row-major grayscale pixels, each bright (above the box pixel
+	 * threshold) with the given probability.
+	 */
+	static byte[] pixels(int width, int height, double density, long seed) {
+		Random random = new Random(seed);
+		byte[] pixels = new byte[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (random.nextDouble() < density ? 230 + random.nextInt(26) : random.nextInt(120));
+		}
+		return pixels;
+	}
+
+	/** Returns thresholded pixels: 255 with the given probability, otherwise 0. */
+	static byte[] binaryPixels(int width, int height, double density, long seed) {
+		Random random = new Random(seed);
+		byte[] pixels = new byte[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (random.nextDouble() < density ? 255 : 0);
+		}
+		return pixels;
+	}
+
+	/** Returns a new single channel Mat of the given pixels, which the caller must release. */
+	static Mat mat(int width, int height, byte[] pixels) {
+		Mat mat = new Mat(height, width, CvType.CV_8UC1);
+		mat.put(0, 0, pixels);
+		return mat;
+	}
+
+}
@@ -0,0 +1,168 @@
+package edu.usc.teamcore.tagger.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.highgui.Highgui;
+import org.opencv.imgproc.Imgproc;
+
+import com.opencsv.CSVWriter;
+
+import edu.usc.teamcore.tagger.service.FrameNames;
+import edu.usc.teamcore.tagger.service.TrackCodec;
+
+/**
+ * Synthetic thermal videos in the videos directory layout: hot blobs
+ * moving at constant speed over a noisy background, bouncing off the edges.
+ * Blob positions are a function of the video and frame, so annotators can
+ * label them without reading the frames, and option files of labels and
+ * reviews of any size can be written to go with them.
+ */
+final class SyntheticVideos {
+
+	static final String USER_AGENT = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.81 Safari/537.36";
+
+	private static final String[] LABELS = { "poacher", "animal" };
+
+	/** When the first synthetic entry was saved. */
+	private static final long FIRST_ENTRY_MILLIS = 1493690805000L;
+
+	private final int width;
+	private final int height;
+	private final int frames;
+	private final int blobs;
+	private final List<String> videos = new ArrayList<>();
+
+	private final TrackCodec trackCodec = new TrackCodec();
+
+	SyntheticVideos(int videos, int frames, int width, int height, int blobs) {
+		this.width = width;
+		this.height = height;
+		this.frames = frames;
+		this.blobs = blobs;
+		for (int i = 0; i < videos; i++) {
+			this.videos.add(String.format("%010d_%010d", 9000 + i, i % 7));
+		}
+	}
+
+	List<String> getVideos() {
+		return videos;
+	}
+
+	int getFrames() {
+		return frames;
+	}
+
+	int getBlobs() {
+		return blobs;
+	}
+
+	/** Writes the frames of every video under the given videos directory. */
+	void writeFrames(Path videosDir) throws IOException {
+		for (int v = 0; v < videos.size(); v++) {
+			String video = videos.get(v);
+			Files.createDirectories(videosDir.resolve(video));
+			Mat frame = new Mat(height, width, CvType.CV_8UC1);
+			try {
+				for (int i = 0; i < frames; i++) {
+					Core.randn(frame, 70, 25);
+					for (int b = 0; b < blobs; b++) {
+						int[] box = box(v, b, i);
+						Core.ellipse(frame, new Point(box[0] + box[2] / 2.0, box[1] + box[3] / 2.0),
+								new Size(box[2] / 2.0, box[3] / 2.0), 0, 0, 360, new Scalar(235), -1);
+					}
+					Imgproc.GaussianBlur(frame, frame, new Size(3, 3), 0);
+					String path = videosDir.resolve(FrameNames.relativePath(video, i)).toString();
+					if (!Highgui.imwrite(path, frame)) {
+						throw new IOException("Unable to write " + path);
+					}
+				}
+			}
+			finally {
+				frame.release();
+			}
+		}
+	}
+
+	/**
+	 * Returns the box of a blob in a frame as x, y, w and h. Blobs are a few
+	 * pixels to a few tens of pixels wide, as people and animals are from
+	 * the air.
+	 */
+	int[] box(int video, int blob, int frame) {
+		Random random = new Random(video * 1000L + blob);
+		int w = 6 + random.nextInt(30), h = 6 + random.nextInt(30);
+		int x = bounce(random.nextInt(width - w), random.nextInt(7) - 3, frame, width - w);
+		int y = bounce(random.nextInt(height - h), random.nextInt(7) - 3, frame, height - h);
+		return new int[] { x, y, w, h };
+	}
+
+	/** The position after the given number of steps, reflected off 0 and max. */
+	private static int bounce(int start, int speed, int steps, int max) {
+		int position = Math.floorMod(start + speed * steps, 2 * max);
+		return position <= max ? position : 2 * max - position;
+	}
+
+	/** Returns the bounds of a box as the client sends them. */
+	static String bounds(int[] box) {
+		return box[0] + "," + box[1] + "," + box[2] + "," + box[3];
+	}
+
+	/**
+	 * Returns the label payload of a video as the client sends it, a frame map
+	 * of the boxes of every blob over the given frames.
+	 */
+	String frameMap(int video, int fromFrame, int toFrame) {
+		StringBuilder json = new StringBuilder("{");
+		for (int i = fromFrame; i < toFrame; i++) {
+			json.append(i == fromFrame ? "" : ",").append('"').append(i).append("\":{");
+			for (int b = 0; b < blobs; b++) {
+				json.append(b == 0 ? "" : ",").append('"').append(bounds(box(video, b, i))).append("\":\"")
+						.append(LABELS[b % LABELS.length]).append('"');
+			}
+			json.append('}');
+		}
+		return json.append('}').toString();
+	}
+
+	/** Returns the entry time of the given entry, as the server records it. */
+	static String entryTime(int entry) {
+		return new Date(FIRST_ENTRY_MILLIS + entry * 1000L).toString();
+	}
+
+	/**
+	 * Writes an option file of labels, stored in the track format, spread
+	 * over the videos. Review files hold the entry time of the reviewed
+	 * label before their own.
+	 */
+	void writeOptionFile(Path file, int entries, boolean review) throws IOException {
+		String[] data = new String[videos.size()];
+		for (int v = 0; v < data.length; v++) {
+			data[v] = trackCodec.encode(frameMap(v, 0, frames));
+		}
+		try (Writer out = new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8);
+				CSVWriter writer = new CSVWriter(out)) {
+			for (int i = 0; i < entries; i++) {
+				int video = i % videos.size();
+				writer.writeNext(review
+						? new String[] { videos.get(video), entryTime(i), entryTime(entries + i), USER_AGENT, data[video], "admin" }
+						: new String[] { videos.get(video), entryTime(i), USER_AGENT, data[video], "teamcore" });
+			}
+		}
+	}
+
+}
@@ -3,10 +3,13 @@ package edu.usc.teamcore.tagger;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import edu.usc.teamcore.tagger.service.OpenCv;
+
 @SpringBootApplication
 public class TaggerApplication {
 	
 	public static void main(String[] args) {
+		OpenCv.load();
 		SpringApplication.run(TaggerApplication.class, args);
 	}
 
@@ -19,6 +19,7 @@ import edu.usc.teamcore.tagger.config.TaggingConfig.Option;
 import edu.usc.teamcore.tagger.config.TaggingConfig.Video;
 import edu.usc.teamcore.tagger.dto.ConfigDTO;
 import edu.usc.teamcore.tagger.dto.ConfigDTO.UserOption;
+import edu.usc.teamcore.tagger.service.VideoCatalog;
 
 @RestController
 @RequestMapping("/config")
@@ -31,6 +32,9 @@ public class ConfigController {
 	@Autowired
 	private TaggingConfig taggingConf;
 
+	@Autowired
+	private VideoCatalog videoCatalog;
+
 	@PostConstruct
 	public void init() {
 		optionModes = new HashMap<>();
@@ -53,15 +57,17 @@ public class ConfigController {
 		ConfigDTO conf = new ConfigDTO();
 		conf.setBoxAreaThreshold(taggingConf.getBoxAreaThreshold());
 		conf.setOptions(options);
-		conf.setVideos(taggingConf.getVideos());
+		conf.setVideos(videoCatalog.getVideos());
 		conf.setLabels(taggingConf.getLabels());
 		if (ADMIN.equals(name)) {
+			List<String> directories;
 			synchronized (DataController.reviewedVideos) {
-				List<Video> reviewedVideos = DataController.reviewedVideos.stream().collect(Collectors.toList());
-				conf.setReviewedVideos(reviewedVideos);
+				directories = DataController.reviewedVideos.stream().collect(Collectors.toList());
 			}
+			// Frames are counted outside the lock, and only for admins asking
+			List<Video> reviewedVideos = directories.stream().map(videoCatalog::get).collect(Collectors.toList());
+			conf.setReviewedVideos(reviewedVideos);
 		}
 		return conf;
 	}
-
 }
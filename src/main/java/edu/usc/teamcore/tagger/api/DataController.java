@@ -1,10 +1,6 @@
 package edu.usc.teamcore.tagger.api;
 
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -12,25 +8,39 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpSession;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
-
-import com.opencsv.CSVReader;
-import com.opencsv.CSVWriter;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import edu.usc.teamcore.tagger.config.TaggingConfig;
 import edu.usc.teamcore.tagger.config.TaggingConfig.Option;
-import edu.usc.teamcore.tagger.config.TaggingConfig.Video;
+import edu.usc.teamcore.tagger.dto.BoxBatchDTO;
+import edu.usc.teamcore.tagger.dto.BoxBatchDTO.BoxResult;
+import edu.usc.teamcore.tagger.dto.DraftDTO;
 import edu.usc.teamcore.tagger.service.BoundingBoxesManager;
+import edu.usc.teamcore.tagger.service.FramePrefetcher;
+import edu.usc.teamcore.tagger.service.LabelDraft;
+import edu.usc.teamcore.tagger.service.LabelDraftManager;
+import edu.usc.teamcore.tagger.service.MotionModel;
+import edu.usc.teamcore.tagger.service.MotionTracks;
+import edu.usc.teamcore.tagger.service.OptionFileStore;
+import edu.usc.teamcore.tagger.service.TrackCodec;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -41,9 +51,12 @@ public class DataController {
 	private static final String LABEL = "Label";
 	private static final String REVIEW = "Review";
 
-	public static final Set<Video> reviewedVideos = Collections.synchronizedSet(new LinkedHashSet<>());
+	/** The most characters of a payload logged. */
+	private static final int LOGGED_PAYLOAD_CHARS = 200;
+
+	/** The directories of the reviewed videos, described with their frame counts only when listed. */
+	public static final Set<String> reviewedVideos = Collections.synchronizedSet(new LinkedHashSet<>());
 
-	private Map<String, ReentrantLock> fileLocks;
 	private Map<String, String> optionInputs;
 	private Map<String, String> optionOutputs;
 
@@ -53,9 +66,23 @@ public class DataController {
 	@Autowired
 	private BoundingBoxesManager boxManager;
 
+	@Autowired
+	private FramePrefetcher framePrefetcher;
+
+	@Autowired
+	private MotionTracks motionTracks;
+
+	@Autowired
+	private OptionFileStore optionFileStore;
+
+	@Autowired
+	private TrackCodec trackCodec;
+
+	@Autowired
+	private LabelDraftManager draftManager;
+
 	@PostConstruct
 	public void init() throws Exception {
-		fileLocks = new HashMap<>();
 		optionInputs = new HashMap<>();
 		optionOutputs = new HashMap<>();
 		for (Option option : taggingConf.getOptions()) {
@@ -66,99 +93,147 @@ public class DataController {
 	}
 
 	private void generateReviewedVideos() throws Exception {
-		Set<String> accessibleVideos = Files.list(Paths.get(taggingConf.getVideosDir())).map(path -> path.getFileName().toString()).collect(Collectors.toSet());
-		Set<Video> videos =
-			Files.readAllLines(Paths.get(taggingConf.getOutputDir() + optionOutputs.get(REVIEW)))
-				 .stream()
-				 .map(line -> {
-					 String[] tokens = line.split(",");
-					 String fileName = tokens[0].replaceAll("\"", "");
-					 Video video = new Video();
-					 video.setDirectory(fileName);
-					 video.setNumFrames(findNumberOfFrames(fileName));
-					 video.setIsAccessible(accessibleVideos.contains(fileName));
-					 return video;
-				 })
-				 .collect(Collectors.toSet());
-		reviewedVideos.addAll(videos);
-	}
-
-	private synchronized ReentrantLock lockFor(String fileName) {
-		if (!fileLocks.containsKey(fileName)) {
-			fileLocks.put(fileName, new ReentrantLock());
-		}
-		return fileLocks.get(fileName);
+		reviewedVideos.addAll(optionFileStore.fileNames(taggingConf.getOutputDir() + optionOutputs.get(REVIEW)));
 	}
 
 	/**
 	 * Saves a labeled entry.
 	 */
 	@RequestMapping(method = RequestMethod.POST)
-	public void postData(@RequestHeader("X-fileName") String fileName, @RequestHeader("X-userAgent") String userAgent,
-			@RequestBody String data) throws IOException {
+	public DeferredResult<Void> postData(@RequestHeader("X-fileName") String fileName,
+			@RequestHeader("X-userAgent") String userAgent, @RequestBody String data)
+			throws IOException, InterruptedException {
+		return withSaveTimeout(saveLabel(fileName, userAgent, data));
+	}
+
+	private CompletableFuture<Void> saveLabel(String fileName, String userAgent, String data)
+			throws IOException, InterruptedException {
 		String outputFileName = taggingConf.getOutputDir() + optionOutputs.get(LABEL);
-		lockFor(outputFileName).lock();
-		try {
-			FileWriter fileWriter = new FileWriter(outputFileName, true);
-			CSVWriter writer = new CSVWriter(fileWriter);
-			String[] values = new String[4];
-			values[0] = fileName;
-			values[1] = new Date().toString();
-			values[2] = userAgent;
-			values[3] = data;
-			writer.writeNext(values);
-			writer.close();
-			log.info("Label data submitted: {} -- {}", fileName, data);
-		}
-		finally {
-			lockFor(outputFileName).unlock();
+		String[] values = new String[5];
+		values[0] = fileName;
+		values[1] = new Date().toString();
+		values[2] = userAgent;
+		values[3] = trackCodec.encode(data);
+		values[4] = currentUser();
+		if (log.isDebugEnabled()) {
+			log.debug("Label data for {}: {}", fileName, abbreviate(data));
 		}
+		return optionFileStore.append(outputFileName, values)
+				.thenRun(() -> log.info("Label data submitted: {} ({} bytes)", fileName, data.length()));
 	}
 
 	/**
 	 * Saves a reviewed entry.
 	 */
 	@RequestMapping(method = RequestMethod.POST, value = "/review")
-	public void postReviewData(@RequestHeader("X-fileName") String fileName,
+	public DeferredResult<Void> postReviewData(@RequestHeader("X-fileName") String fileName,
 			@RequestHeader("X-entryTime") String entryTime, @RequestHeader("X-optionName") String optionName,
-			@RequestHeader("X-userAgent") String userAgent, @RequestBody String data) throws IOException {
+			@RequestHeader("X-userAgent") String userAgent, @RequestBody String data)
+			throws IOException, InterruptedException {
+		return withSaveTimeout(saveReview(fileName, entryTime, optionName, userAgent, data));
+	}
+
+	private CompletableFuture<Void> saveReview(String fileName, String entryTime, String optionName,
+			String userAgent, String data) throws IOException, InterruptedException {
 		String outputFileName = taggingConf.getOutputDir() + optionOutputs.get(optionName);
-		lockFor(outputFileName).lock();
-		try {
-			FileWriter fileWriter = new FileWriter(outputFileName, true);
-			CSVWriter writer = new CSVWriter(fileWriter);
-			String[] values = new String[5];
-			values[0] = fileName;
-			values[1] = entryTime;
-			values[2] = new Date().toString();
-			values[3] = userAgent;
-			values[4] = data;
-			writer.writeNext(values);
-			writer.close();
-			log.info("{} data submitted: {} -- {}", optionName, fileName, data);
+		String[] values = new String[6];
+		values[0] = fileName;
+		values[1] = entryTime;
+		values[2] = new Date().toString();
+		values[3] = userAgent;
+		values[4] = trackCodec.encode(data);
+		values[5] = currentUser();
+		if (log.isDebugEnabled()) {
+			log.debug("{} data for {}: {}", optionName, fileName, abbreviate(data));
+		}
+		return optionFileStore.append(outputFileName, values).thenRun(() -> {
+			log.info("{} data submitted: {} ({} bytes)", optionName, fileName, data.length());
 
 			if (REVIEW.equals(optionName)) {
-				Video video = new Video();
-				video.setDirectory(fileName);
-				video.setNumFrames(findNumberOfFrames(fileName));
-				video.setIsAccessible(true);
-				reviewedVideos.add(video);
+				reviewedVideos.add(fileName);
 			}
-		}
-		finally {
-			lockFor(outputFileName).unlock();
-		}
+		});
+	}
+
+	/**
+	 * Opens a draft of a video to save deltas to, starting from the given
+	 * labels. The entry time is only given when reviewing.
+	 */
+	@RequestMapping(method = RequestMethod.POST, value = "/draft")
+	public DraftDTO openDraft(@RequestHeader("X-fileName") String fileName,
+			@RequestHeader(value = "X-entryTime", required = false) String entryTime,
+			@RequestHeader("X-optionName") String optionName, @RequestHeader("X-userAgent") String userAgent,
+			@RequestBody(required = false) String data) throws IOException {
+		LabelDraft draft = draftManager.open(fileName, optionName, entryTime, userAgent, data);
+		return new DraftDTO(draft.getId(), draft.getVersion());
+	}
+
+	/**
+	 * Saves the frames changed since the given version of a draft, with null
+	 * for frames that were removed.
+	 */
+	@RequestMapping(method = RequestMethod.PATCH, value = "/draft/{id}")
+	public DraftDTO saveDraftDelta(@PathVariable("id") String id, @RequestHeader("X-baseVersion") Integer baseVersion,
+			@RequestBody String delta) throws IOException {
+		return new DraftDTO(id, draftManager.applyDelta(id, baseVersion, delta));
+	}
+
+	/**
+	 * Submits a draft as a labeled or reviewed entry, and drops it.
+	 */
+	@RequestMapping(method = RequestMethod.POST, value = "/draft/{id}/commit")
+	public DeferredResult<Void> commitDraft(@PathVariable("id") String id)
+			throws IOException, InterruptedException {
+		LabelDraft draft = draftManager.get(id);
+		String data = draftManager.getData(id);
+		CompletableFuture<Void> saved = draft.getEntryTime() == null
+				? saveLabel(draft.getVideo(), draft.getUserAgent(), data)
+				: saveReview(draft.getVideo(), draft.getEntryTime(), draft.getOptionName(), draft.getUserAgent(), data);
+		return withSaveTimeout(saved.thenRun(() -> {
+			try {
+				draftManager.discard(id);
+			}
+			catch (IOException e) {
+				log.warn("Unable to remove committed draft {}: {}", id, e.toString());
+			}
+		}));
 	}
 
-	private Integer findNumberOfFrames(String fileName) {
-		return
-			taggingConf
-				.getVideos()
-				.stream()
-				.filter(v -> v.getDirectory().equals(fileName))
-				.collect(Collectors.toList())
-				.get(0)
-				.getNumFrames();
+	/**
+	 * Answers once a save is written, or with 503 if the journal takes longer
+	 * than the save timeout. The entry may still be written after that.
+	 */
+	private DeferredResult<Void> withSaveTimeout(CompletableFuture<Void> saved) {
+		DeferredResult<Void> result = new DeferredResult<>(taggingConf.getSaveTimeoutMillis());
+		saved.whenComplete((done, e) -> {
+			if (e == null) {
+				result.setResult(null);
+			}
+			else {
+				result.setErrorResult(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Drops a draft without submitting it.
+	 */
+	@RequestMapping(method = RequestMethod.DELETE, value = "/draft/{id}")
+	public void discardDraft(@PathVariable("id") String id) throws IOException {
+		draftManager.discard(id);
+	}
+
+	/** The start of a payload, as logged. */
+	private static String abbreviate(String data) {
+		return data.length() <= LOGGED_PAYLOAD_CHARS ? data
+				: data.substring(0, LOGGED_PAYLOAD_CHARS) + "... (" + data.length() + " chars)";
+	}
+
+	/** The annotator saving, recorded after the labels. */
+	private String currentUser() {
+		Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+		return auth == null ? "" : auth.getName();
 	}
 
 	/**
@@ -168,60 +243,125 @@ public class DataController {
 	public List<String> getDataList(@RequestHeader("X-fileName") String fileName,
 			@RequestHeader("X-optionName") String optionName) throws IOException {
 		String inputFileName = taggingConf.getOutputDir() + optionInputs.get(optionName);
-		lockFor(inputFileName).lock();
-		try {
-			List<String> dataList =
-				Files.readAllLines(Paths.get(inputFileName))
-					 .stream()
-					 .filter(line -> line.startsWith("\"" + fileName))
-					 .map(line -> line.split(",")[1].replaceAll("\"", ""))
-					 .collect(Collectors.toList());
-				return dataList;
-		}
-		finally {
-			lockFor(inputFileName).unlock();
-		}
+		return optionFileStore.list(inputFileName, fileName);
 	}
 
 	/**
-	 * Returns a labeled entry to review.
+	 * Returns a labeled entry to review, as a frame map unless the stored
+	 * track format is asked for.
 	 */
 	@RequestMapping(method = RequestMethod.GET)
 	public String getDataList(@RequestHeader("X-fileName") String fileName,
-			@RequestHeader("X-entryTime") String entryTime, @RequestHeader("X-optionName") String optionName)
-			throws IOException {
+			@RequestHeader("X-entryTime") String entryTime, @RequestHeader("X-optionName") String optionName,
+			@RequestHeader(value = "X-format", required = false) String format) throws IOException {
 		String inputFileName = taggingConf.getOutputDir() + optionInputs.get(optionName);
-		lockFor(inputFileName).lock();
-		try (CSVReader reader = new CSVReader(new FileReader(inputFileName))) {
-			String [] nextLine;
-			while ((nextLine = reader.readNext()) != null) {
-				if (nextLine[0].equals(fileName) && nextLine[1].equals(entryTime)) {
-					for (int i = 2; i < nextLine.length; i++) {
-						if (nextLine[i].startsWith("{")) { // Identify JSON column
-							return nextLine[i];
-						}
-					}
-					throw new IllegalArgumentException("No entry found for " + fileName + " at " + entryTime);
+		String[] entry = optionFileStore.read(inputFileName, fileName, entryTime);
+		if (entry != null) {
+			for (int i = 2; i < entry.length; i++) {
+				if (entry[i].startsWith("{")) { // Identify JSON column
+					return TrackCodec.FORMAT.equals(format) ? entry[i] : trackCodec.decode(entry[i]);
 				}
 			}
-			throw new IllegalArgumentException("No entry found for " + fileName + " at " + entryTime);
-		}
-		finally {
-			lockFor(inputFileName).unlock();
 		}
+		throw new IllegalArgumentException("No entry found for " + fileName + " at " + entryTime);
 	}
 	
 	/**
-	 * Returns a labeled entry to review.
+	 * Returns the new position of a box, or the box itself if tracking is
+	 * overloaded or does not finish in time. The tracking engine may be
+	 * chosen instead of the video's. The search follows the box's motion
+	 * when it continues a track of the session.
 	 */
 	@RequestMapping(method = RequestMethod.GET, value =  "/box")
-	public String getBoxPosition(@RequestHeader("bufferSize") String bufferSize, 
+	public DeferredResult<String> getBoxPosition(@RequestHeader("bufferSize") String bufferSize, 
 			@RequestHeader("prevFilename") String prevFilename, @RequestHeader("currFilename") String currFilename, 
-			@RequestHeader("bounds") String bounds) throws IOException {
+			@RequestHeader("bounds") String bounds,
+			@RequestHeader(value = "X-trackingEngine", required = false) String trackingEngine, HttpSession session) {
 		
+		framePrefetcher.onFrameRequested(session.getId(), currFilename);
 		String prevFile = taggingConf.getVideosDir() + prevFilename;
 		String currFile = taggingConf.getVideosDir() + currFilename;
-		return boxManager.getTranslatedBoxVal(prevFile, currFile, bounds, Integer.parseInt(bufferSize));
+
+		DeferredResult<String> result = new DeferredResult<>(taggingConf.getTrackingTimeoutMillis(), bounds);
+		MotionModel motion = motionTracks.take(session.getId(), prevFilename, bounds);
+		boxManager.getTranslatedBoxValAsync(prevFile, currFile, bounds, Integer.parseInt(bufferSize), trackingEngine, motion)
+			.whenComplete((position, e) -> {
+				if (e == null) {
+					motionTracks.put(session.getId(), currFilename, position, motion);
+					result.setResult(position);
+				}
+				else if (e instanceof RejectedExecutionException || e instanceof TimeoutException) {
+					log.debug("Tracking overloaded, keeping box {} in {}", bounds, currFilename);
+					result.setResult(bounds);
+				}
+				else {
+					result.setErrorResult(e);
+				}
+			});
+		return result;
+	}
+
+	/**
+	 * Returns the new positions of every box of a frame in one request.
+	 */
+	@RequestMapping(method = RequestMethod.POST, value = "/box/batch")
+	public DeferredResult<List<BoxResult>> getBoxPositions(@RequestBody BoxBatchDTO batch, HttpSession session) {
+		if (batch.getBoxes() == null || batch.getBufferSize() == null) {
+			throw new IllegalArgumentException("A box batch needs boxes and a bufferSize");
+		}
+		framePrefetcher.onFrameRequested(session.getId(), batch.getCurrFilename());
+		String prevFile = taggingConf.getVideosDir() + batch.getPrevFilename();
+		String currFile = taggingConf.getVideosDir() + batch.getCurrFilename();
+
+		List<BoxResult> timedOut = batch.getBoxes().stream()
+				.map(bounds -> new BoxResult(bounds, null, "Tracking timed out"))
+				.collect(Collectors.toList());
+		DeferredResult<List<BoxResult>> result = new DeferredResult<>(taggingConf.getTrackingTimeoutMillis(), timedOut);
+		List<MotionModel> motions = batch.getBoxes().stream()
+				.map(bounds -> motionTracks.take(session.getId(), batch.getPrevFilename(), bounds))
+				.collect(Collectors.toList());
+		boxManager.getTranslatedBoxValsAsync(prevFile, currFile, batch.getBoxes(), batch.getBufferSize(),
+				batch.getTrackingEngine(), motions)
+			.whenComplete((positions, e) -> {
+				if (e == null) {
+					for (int i = 0; i < positions.size(); i++) {
+						if (positions.get(i).getPosition() != null) {
+							motionTracks.put(session.getId(), batch.getCurrFilename(), positions.get(i).getPosition(),
+									motions.get(i));
+						}
+					}
+					result.setResult(positions);
+				}
+				else {
+					result.setErrorResult(e);
+				}
+			});
+		return result;
+	}
+
+	/**
+	 * Signals that a video was opened, so its first frames are decoded ahead.
+	 */
+	@RequestMapping(method = RequestMethod.POST, value = "/prefetch")
+	public void openVideo(@RequestHeader("X-fileName") String fileName,
+			@RequestHeader(value = "X-frameIndex", defaultValue = "0") Integer frameIndex, HttpSession session) {
+		framePrefetcher.onVideoOpened(session.getId(), fileName, frameIndex);
+	}
+
+	/**
+	 * Returns the number of batches and saves written to each option file.
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/journal")
+	public Map<String, Map<String, Long>> getJournalStats() {
+		return optionFileStore.getStats();
+	}
+
+	/**
+	 * Returns the prefetch counters.
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/prefetch")
+	public Map<String, Long> getPrefetchStats() {
+		return framePrefetcher.getStats();
 	}
 
 }
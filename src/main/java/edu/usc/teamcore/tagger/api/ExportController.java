@@ -0,0 +1,89 @@
+package edu.usc.teamcore.tagger.api;
+
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.config.TaggingConfig.Option;
+import edu.usc.teamcore.tagger.service.DatasetExporter;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@RestController
+@RequestMapping("/data/export")
+public class ExportController {
+
+	private Map<String, String> optionOutputs;
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private DatasetExporter exporter;
+
+	@PostConstruct
+	public void init() {
+		optionOutputs = new HashMap<>();
+		for (Option option : taggingConf.getOptions()) {
+			optionOutputs.put(option.getName(), option.getOutputFile());
+		}
+	}
+
+	/**
+	 * Streams the boxes saved by an option as JSON lines or CSV, one row per
+	 * video, frame, box and label, gzipped if the client accepts it.
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	public ResponseEntity<StreamingResponseBody> export(@RequestParam("option") String optionName,
+			@RequestParam(value = "format", defaultValue = DatasetExporter.JSONL) String format,
+			@RequestParam(value = "video", required = false) String video,
+			@RequestParam(value = "label", required = false) String label,
+			@RequestParam(value = "annotator", required = false) String annotator,
+			@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+		String outputFile = optionOutputs.get(optionName);
+		if (outputFile == null) {
+			throw new IllegalArgumentException("No option " + optionName);
+		}
+		if (!DatasetExporter.JSONL.equals(format) && !DatasetExporter.CSV.equals(format)) {
+			throw new IllegalArgumentException("Unknown export format " + format);
+		}
+		String file = taggingConf.getOutputDir() + outputFile;
+		boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(DatasetExporter.CSV.equals(format) ? new MediaType("text", "csv")
+				: new MediaType("application", "x-ndjson"));
+		headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\""
+				+ outputFile.replaceFirst("\\.csv$", "") + "." + format + "\"");
+		if (gzip) {
+			headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		StreamingResponseBody body = out -> {
+			long start = System.currentTimeMillis();
+			OutputStream stream = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+			long rows = exporter.export(file, format, video, label, annotator, stream);
+			if (gzip) {
+				((GZIPOutputStream) stream).finish();
+			}
+			log.info("Exported {} rows of {} in {} ms", rows, optionName, System.currentTimeMillis() - start);
+		};
+		return new ResponseEntity<>(body, headers, HttpStatus.OK);
+	}
+
+}
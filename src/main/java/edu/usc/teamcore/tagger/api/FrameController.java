@@ -0,0 +1,284 @@
+package edu.usc.teamcore.tagger.api;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.dto.FrameManifestDTO;
+import edu.usc.teamcore.tagger.dto.FramePackDTO;
+import edu.usc.teamcore.tagger.service.FrameManifest;
+import edu.usc.teamcore.tagger.service.FrameManifestManager;
+import edu.usc.teamcore.tagger.service.FrameNames;
+import edu.usc.teamcore.tagger.service.FrameNotFoundException;
+import edu.usc.teamcore.tagger.service.FramePack;
+import edu.usc.teamcore.tagger.service.FramePackManager;
+import edu.usc.teamcore.tagger.service.FrameReader;
+import edu.usc.teamcore.tagger.service.FrameTier;
+import edu.usc.teamcore.tagger.service.FrameVariantCache;
+
+@RestController
+@RequestMapping("/frames")
+public class FrameController {
+
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	/** Packs fetched by version never change, so they may be cached for a year. */
+	private static final String IMMUTABLE = "private, max-age=31536000, immutable";
+	private static final String REVALIDATE = "private, no-cache";
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private FrameManifestManager manifestManager;
+
+	@Autowired
+	private FramePackManager packManager;
+
+	@Autowired
+	private FrameVariantCache variantCache;
+
+	@Autowired
+	private FrameReader frameReader;
+
+	/**
+	 * Returns the manifest of a video. Given a cursor, only the frames within
+	 * window frames of it are listed, so clients need not hold the whole
+	 * video; a window of 0 lists just the cursor.
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/{video}/manifest")
+	public FrameManifestDTO getManifest(@PathVariable("video") String video,
+			@RequestParam(value = "cursor", required = false) Integer cursor,
+			@RequestParam(value = "window", required = false) Integer window, HttpServletResponse response)
+			throws IOException {
+		FrameManifest manifest = manifestManager.getManifest(video);
+		int first = 0, end = manifest.getFrameCount();
+		if (cursor != null) {
+			int radius = window == null ? 0 : Math.max(0, window);
+			first = Math.min(end, Math.max(0, cursor - radius));
+			end = Math.max(first, Math.min(end, cursor + radius + 1));
+		}
+		response.setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE);
+		return new FrameManifestDTO(video, manifest.getEtag(), manifest.getFrameCount(), manifest.getWidth(),
+				manifest.getHeight(), first, Arrays.copyOfRange(manifest.getSizes(), first, end),
+				Arrays.copyOfRange(manifest.getHashes(), first, end));
+	}
+
+	/**
+	 * Returns the index of a video's frame pack at the given tier, or 202
+	 * while the pack is being built, when frames are to be fetched one by
+	 * one meanwhile.
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/{video}/index")
+	public FramePackDTO getIndex(@PathVariable("video") String video,
+			@RequestParam(value = "tier", required = false) String tierName, HttpServletResponse response)
+			throws IOException {
+		FrameTier tier = FrameTier.parse(tierName);
+		FramePack pack = packManager.getBuiltPack(video, tier);
+		if (pack == null) {
+			response.setStatus(HttpServletResponse.SC_ACCEPTED);
+			return null;
+		}
+		Integer width = null, height = null;
+		if (pack.getFrameCount() > 0) {
+			Dimension dimension = frameReader.getDimensions(
+					Paths.get(taggingConf.getVideosDir(), FrameNames.relativePath(video, 0)).toString());
+			width = dimension.width;
+			height = dimension.height;
+		}
+		response.setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE);
+		return new FramePackDTO(video, tier.name().toLowerCase(), pack.getEtag(), pack.getSize(), pack.getLengths(),
+				width, height);
+	}
+
+	/**
+	 * Serves a single frame at the given tier, generating the variant if
+	 * needed.
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/{video}/{index:\\d+}")
+	public void getFrame(@PathVariable("video") String video, @PathVariable("index") int index,
+			@RequestParam(value = "tier", required = false) String tierName, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		variantCache.read(video, index, FrameTier.parse(tierName), path -> {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			try (InputStream in = Files.newInputStream(path)) {
+				String etag = "W/\"" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "-"
+						+ Long.toHexString(attributes.size()) + "\"";
+				response.setHeader(HttpHeaders.ETAG, etag);
+				response.setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE);
+				if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+					response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+					return null;
+				}
+				response.setContentType("image/jpeg");
+				response.setContentLengthLong(attributes.size());
+				StreamUtils.copy(in, response.getOutputStream());
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Serves a video's frame pack, or a single byte range of it. With the
+	 * current version given as v, the response may be cached indefinitely,
+	 * and is served straight from the pack's file; with an older one it fails
+	 * with 412, as the offsets the client holds are those of another pack.
+	 * Without v, it fails with 503 while the pack is being built.
+	 */
+	@RequestMapping(method = { RequestMethod.GET, RequestMethod.HEAD }, value = "/{video}/pack")
+	public void getPack(@PathVariable("video") String video,
+			@RequestParam(value = "tier", required = false) String tierName,
+			@RequestParam(value = "v", required = false) String version, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		FrameTier tier = FrameTier.parse(tierName);
+		Path path;
+		String etag;
+		if (version != null) {
+			path = packManager.getPackFile(video, tier, version);
+			if (path == null) {
+				response.sendError(HttpServletResponse.SC_PRECONDITION_FAILED);
+				return;
+			}
+			etag = "\"" + version + "\"";
+		}
+		else {
+			FramePack pack = packManager.getBuiltPack(video, tier);
+			if (pack == null) {
+				response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+				response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				return;
+			}
+			path = pack.getPath();
+			etag = "\"" + pack.getEtag() + "\"";
+		}
+		response.setHeader(HttpHeaders.ETAG, etag);
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		response.setHeader(HttpHeaders.CACHE_CONTROL, version != null ? IMMUTABLE : REVALIDATE);
+		if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		long size = Files.size(path);
+		long start = 0, end = size - 1;
+		String range = request.getHeader(HttpHeaders.RANGE);
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (range != null && (ifRange == null || ifRange.equals(etag))) {
+			long[] bounds = parseRange(range, size);
+			if (bounds == null) {
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (bounds.length == 2) {
+				start = bounds[0];
+				end = bounds[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+			}
+		}
+		response.setContentType("application/octet-stream");
+		response.setContentLengthLong(end - start + 1);
+		if (RequestMethod.HEAD.name().equals(request.getMethod()) || end < start) {
+			return;
+		}
+
+		// Let Tomcat send the file straight from the page cache when it can; the
+		// file is named by its etag, so it holds the bytes the headers describe
+		if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, end + 1);
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			long position = start;
+			while (position <= end) {
+				position += channel.transferTo(position, end + 1 - position, out);
+			}
+		}
+	}
+
+	@ExceptionHandler(FrameNotFoundException.class)
+	public void handleNotFound(FrameNotFoundException e, HttpServletResponse response) throws IOException {
+		response.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+	}
+
+	/** Unknown tiers and invalid video names. */
+	@ExceptionHandler(IllegalArgumentException.class)
+	public void handleBadRequest(IllegalArgumentException e, HttpServletResponse response) throws IOException {
+		response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+	}
+
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			if (candidate.trim().equals(etag) || candidate.trim().equals("*")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a single "bytes=" range into its first and last byte. Returns
+	 * null if it cannot be satisfied, or an empty array to serve the whole
+	 * pack for ranges that are not single byte ranges.
+	 */
+	private static long[] parseRange(String range, long size) {
+		if (!range.startsWith("bytes=") || range.contains(",")) {
+			return new long[0];
+		}
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return new long[0];
+		}
+		try {
+			long start, end;
+			if (dash == 0) {
+				long suffix = Long.parseLong(spec.substring(1));
+				start = Math.max(0, size - suffix);
+				end = size - 1;
+			}
+			else {
+				start = Long.parseLong(spec.substring(0, dash));
+				end = dash == spec.length() - 1 ? size - 1 : Math.min(size - 1, Long.parseLong(spec.substring(dash + 1)));
+			}
+			return start > end || start >= size ? null : new long[] { start, end };
+		}
+		catch (NumberFormatException e) {
+			return new long[0];
+		}
+	}
+
+}
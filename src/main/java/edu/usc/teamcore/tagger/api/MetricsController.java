@@ -0,0 +1,75 @@
+package edu.usc.teamcore.tagger.api;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.usc.teamcore.tagger.service.FrameCache;
+import edu.usc.teamcore.tagger.service.FrameVariantCache;
+import edu.usc.teamcore.tagger.service.MatPool;
+import edu.usc.teamcore.tagger.service.MetricsRegistry;
+
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+	@Autowired
+	private MetricsRegistry metrics;
+
+	@Autowired
+	private FrameCache frameCache;
+
+	@Autowired
+	private FrameVariantCache variantCache;
+
+	@Autowired
+	private MatPool matPool;
+
+	@PostConstruct
+	public void init() {
+		metrics.gauge("frameCache.bytes", frameCache::getSizeInBytes);
+		metrics.gauge("frameCache.frames", frameCache::getSize);
+		metrics.gauge("frameCache.hits", frameCache::getHits);
+		metrics.gauge("frameCache.misses", frameCache::getMisses);
+		metrics.gauge("frameCache.evictions", frameCache::getEvictions);
+		metrics.gauge("frameVariants.bytes", variantCache::getSizeInBytes);
+		metrics.gauge("matPool.bytes", matPool::getSizeInBytes);
+		metrics.gauge("process.residentBytes", MetricsController::getResidentBytes);
+	}
+
+	/**
+	 * Returns the timers and sizes of tracking and saving, and the cache
+	 * gauges.
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	public Map<String, Object> getMetrics() {
+		return metrics.getSnapshot();
+	}
+
+	/**
+	 * Returns the resident set size of the process, heap and native memory
+	 * alike, or -1 where /proc is not available.
+	 */
+	private static long getResidentBytes() {
+		try {
+			for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e) {
+			// Not Linux
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,73 @@
+package edu.usc.teamcore.tagger.api;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import edu.usc.teamcore.tagger.dto.PropagationDTO;
+import edu.usc.teamcore.tagger.dto.PropagationDTO.TrackedFrame;
+import edu.usc.teamcore.tagger.service.TrackPropagationManager;
+import edu.usc.teamcore.tagger.service.TrackPropagationManager.PropagationListener;
+
+@RestController
+@RequestMapping("/data/track")
+public class TrackController {
+
+	private static final long PROPAGATION_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+	@Autowired
+	private TrackPropagationManager propagationMgr;
+
+	/**
+	 * Propagates boxes across frames, streaming a "job" event with the job id,
+	 * then one "frame" event per tracked frame and finally a "done" event.
+	 */
+	@RequestMapping(method = RequestMethod.POST)
+	public SseEmitter propagate(@RequestBody PropagationDTO request) throws IOException {
+		SseEmitter emitter = new SseEmitter(PROPAGATION_TIMEOUT_MILLIS);
+		String jobId = propagationMgr.start(request, new PropagationListener() {
+
+			@Override
+			public void onStart(String jobId) throws IOException {
+				emitter.send(SseEmitter.event().name("job").data(jobId));
+			}
+
+			@Override
+			public void onFrame(TrackedFrame frame) throws IOException {
+				emitter.send(SseEmitter.event().name("frame").data(frame, MediaType.APPLICATION_JSON));
+			}
+
+			@Override
+			public void onComplete(boolean cancelled) throws IOException {
+				emitter.send(SseEmitter.event().name("done").data(cancelled ? "cancelled" : "completed"));
+				emitter.complete();
+			}
+
+			@Override
+			public void onError(Exception e) {
+				emitter.completeWithError(e);
+			}
+
+		});
+		// Stop tracking once the client goes away
+		emitter.onCompletion(() -> propagationMgr.cancel(jobId));
+		emitter.onTimeout(() -> propagationMgr.cancel(jobId));
+		return emitter;
+	}
+
+	/**
+	 * Cancels a propagation job.
+	 */
+	@RequestMapping(method = RequestMethod.DELETE, value = "/{jobId}")
+	public boolean cancel(@PathVariable("jobId") String jobId) {
+		return propagationMgr.cancel(jobId);
+	}
+
+}
@@ -0,0 +1,60 @@
+package edu.usc.teamcore.tagger.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+	public static final String TRACKING_EXECUTOR = "trackingExecutor";
+	public static final String PROPAGATION_EXECUTOR = "propagationExecutor";
+	public static final String PREFETCH_EXECUTOR = "prefetchExecutor";
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	/**
+	 * Bounded pool running the native OpenCV box tracking work.
+	 */
+	@Bean(name = TRACKING_EXECUTOR)
+	public ThreadPoolTaskExecutor trackingExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(taggingConf.getTrackingPoolSize());
+		executor.setMaxPoolSize(taggingConf.getTrackingPoolSize());
+		executor.setQueueCapacity(taggingConf.getTrackingQueueCapacity());
+		executor.setThreadNamePrefix("tracking-");
+		return executor;
+	}
+
+	/**
+	 * Pool running multi-frame propagation jobs; a job is rejected rather
+	 * than queued when every thread is busy.
+	 */
+	@Bean(name = PROPAGATION_EXECUTOR)
+	public ThreadPoolTaskExecutor propagationExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(taggingConf.getPropagationPoolSize());
+		executor.setMaxPoolSize(taggingConf.getPropagationPoolSize());
+		executor.setQueueCapacity(0);
+		executor.setThreadNamePrefix("propagation-");
+		return executor;
+	}
+
+	/**
+	 * Low-priority pool decoding frames ahead of the annotators and building
+	 * frame packs; work that does not fit in the queue is rejected.
+	 */
+	@Bean(name = PREFETCH_EXECUTOR)
+	public ThreadPoolTaskExecutor prefetchExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(taggingConf.getPrefetchPoolSize());
+		executor.setMaxPoolSize(taggingConf.getPrefetchPoolSize());
+		executor.setQueueCapacity(taggingConf.getPrefetchQueueCapacity());
+		executor.setThreadPriority(Thread.MIN_PRIORITY);
+		executor.setThreadNamePrefix("prefetch-");
+		return executor;
+	}
+
+}
@@ -25,6 +25,79 @@ public class TaggingConfig {
 	/** The size after which ignore calculating next bounding box. */
 	private Integer boxAreaMaxSize;
 
+	/**
+	 * The memory budget for cached decoded frames, in bytes. A frame takes
+	 * five bytes a pixel: one of native memory for the image and four of heap
+	 * for its bright pixel counts.
+	 */
+	private Long frameCacheMaxBytes;
+
+	/** The largest share of a frame's area for which only the region is decoded. */
+	private Double roiDecodeMaxFraction;
+
+	/** The number of threads tracking boxes. */
+	private Integer trackingPoolSize;
+
+	/** The number of box tracking tasks that may wait for a thread. */
+	private Integer trackingQueueCapacity;
+
+	/** How long a box request waits for tracking before keeping the box where it was. */
+	private Long trackingTimeoutMillis;
+
+	/** The number of propagation jobs that may run at once. */
+	private Integer propagationPoolSize;
+
+	/** The most frames a single propagation job may cover. */
+	private Integer propagationMaxFrames;
+
+	/** The number of frames decoded ahead of an annotator. */
+	private Integer prefetchFrames;
+
+	/** The most prefetches an annotator session may have pending. */
+	private Integer prefetchMaxPending;
+
+	/** The number of threads decoding prefetched frames. */
+	private Integer prefetchPoolSize;
+
+	/** The number of prefetches that may wait for a thread. */
+	private Integer prefetchQueueCapacity;
+
+	/** The number of saves that may wait for the journal of a file. */
+	private Integer journalQueueCapacity;
+
+	/** The most saves written to a file together. */
+	private Integer journalMaxBatch;
+
+	/** Whether each batch of saves is forced to disk before the saves complete. */
+	private Boolean journalForce;
+
+	/** How long a save waits for room in the journal's queue, and then for the journal, before answering 503. */
+	private Long saveTimeoutMillis;
+
+	/** The number of deltas saved to a draft between full checkpoints. */
+	private Integer draftCheckpointInterval;
+
+	/** How long a draft may go without saves before it is discarded. */
+	private Integer draftMaxIdleHours;
+
+	/** The disk budget for downscaled frame variants, in bytes. */
+	private Long frameVariantCacheMaxBytes;
+
+	/** The JPEG quality of downscaled frame variants, from 0 to 100. */
+	private Integer frameVariantJpegQuality;
+
+	/** One in how many tracked boxes is logged at debug level. */
+	private Integer trackingLogSampleRate;
+
+	/** The tracking engine of videos that do not configure one. */
+	private String trackingEngine;
+
+	/**
+	 * The buffer around the predicted position of a moving box, in pixels,
+	 * searched before the requested buffer.
+	 */
+	private Integer motionSearchBuffer;
+
 	/** The videos directory. */
 	private String videosDir;
 
@@ -64,12 +137,15 @@ public class TaggingConfig {
 		/** The video jpeg directory. */
 		private String directory;
 
-		/** The total number of frames in the video. */		
+		/** The total number of frames, only used if the video has no directory to count them in. */
 		private Integer numFrames;
 
 		/** Whether the video file is accessible. */
 		private Boolean isAccessible;
 
+		/** The tracking engine for this video's camera, if not the default one. */
+		private String trackingEngine;
+
 	}
 
 	@Data
@@ -0,0 +1,36 @@
+package edu.usc.teamcore.tagger.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+public class BoxBatchDTO {
+
+	private String prevFilename;
+	private String currFilename;
+	private Integer bufferSize;
+	private List<String> boxes;
+
+	/** The tracking engine to use instead of the video's, if any. */
+	private String trackingEngine;
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class BoxResult {
+
+		/** The box in the previous frame, as sent. */
+		private String bounds;
+
+		/** The box in the current frame, or null if tracking failed. */
+		private String position;
+
+		/** Why tracking failed, if it did. */
+		private String error;
+
+	}
+
+}
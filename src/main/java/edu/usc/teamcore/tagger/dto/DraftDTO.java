@@ -0,0 +1,18 @@
+package edu.usc.teamcore.tagger.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DraftDTO {
+
+	/** The draft id. */
+	private String id;
+
+	/** The version of the draft, which the next delta must be based on. */
+	private Integer version;
+
+}
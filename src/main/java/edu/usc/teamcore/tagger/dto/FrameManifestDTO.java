@@ -0,0 +1,36 @@
+package edu.usc.teamcore.tagger.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FrameManifestDTO {
+
+	/** The video directory. */
+	private String video;
+
+	/** The version of the manifest, which changes whenever any frame does. */
+	private String etag;
+
+	/** The number of frames in the video. */
+	private Integer frameCount;
+
+	/** The width of the frames. */
+	private Integer width;
+
+	/** The height of the frames. */
+	private Integer height;
+
+	/** The index of the first frame listed. */
+	private Integer first;
+
+	/** The size of each listed frame, in bytes. */
+	private long[] sizes;
+
+	/** The content hash of each listed frame. */
+	private String[] hashes;
+
+}
@@ -0,0 +1,33 @@
+package edu.usc.teamcore.tagger.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FramePackDTO {
+
+	/** The video directory. */
+	private String video;
+
+	/** The frame tier the pack holds. */
+	private String tier;
+
+	/** The version of the pack, to be passed back when fetching it. */
+	private String etag;
+
+	/** The size of the pack, in bytes. */
+	private Long size;
+
+	/** The length of each frame, in order; frames are stored back to back. */
+	private int[] lengths;
+
+	/** The width of the full frames, at which frames of every tier are displayed. */
+	private Integer width;
+
+	/** The height of the full frames. */
+	private Integer height;
+
+}
@@ -0,0 +1,47 @@
+package edu.usc.teamcore.tagger.dto;
+
+import java.util.List;
+
+import edu.usc.teamcore.tagger.dto.BoxBatchDTO.BoxResult;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+public class PropagationDTO {
+
+	/** The video jpeg directory. */
+	private String video;
+
+	/** The index of the frame the boxes are on. */
+	private Integer startFrame;
+
+	/** The number of frames to propagate the boxes over. */
+	private Integer frameCount;
+
+	/** Whether to move towards the first frame instead of the last. */
+	private Boolean backward;
+
+	private Integer bufferSize;
+	private List<String> boxes;
+
+	/** The tracking engine to use instead of the video's, if any. */
+	private String trackingEngine;
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class TrackedFrame {
+
+		/** The frame index. */
+		private Integer frame;
+
+		/** The frame name, as used for keys of the label data. */
+		private String frameName;
+
+		/** One result per starting box, whose bounds identify the track. */
+		private List<BoxResult> boxes;
+
+	}
+
+}
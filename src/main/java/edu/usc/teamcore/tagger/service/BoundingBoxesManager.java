@@ -1,5 +1,6 @@
 package edu.usc.teamcore.tagger.service;
 
+import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
@@ -9,25 +10,37 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 
-import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfByte;
+import org.opencv.core.Rect;
 import org.opencv.highgui.Highgui;
-import org.opencv.imgproc.Imgproc;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Component;
 
+import edu.usc.teamcore.tagger.config.ExecutorConfig;
 import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.dto.BoxBatchDTO.BoxResult;
 import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
 
 @Data
+@Slf4j
 @Component
 public class BoundingBoxesManager {
 	
@@ -39,29 +52,193 @@ public class BoundingBoxesManager {
 	private TaggingConfig taggingConf;
 	
 	@Autowired
-	private ConnectedComponentManager connectedComponentMgr;
+	private TrackingEngines trackingEngines;
+	
+	@Autowired
+	private FrameReader frameReader;
+	
+	@Autowired
+	private FrameCache frameCache;
+	
+	@Autowired
+	@Qualifier(ExecutorConfig.TRACKING_EXECUTOR)
+	private AsyncTaskExecutor trackingExecutor;
+	
+	@Autowired
+	private MetricsRegistry metrics;
+	
+	/** The number of boxes tracked, to log one in every few. */
+	private final AtomicLong tracked = new AtomicLong();
 	
 	public String getTranslatedBoxVal(String prevFile, String currFile, String boundsStr, int bufferSize)
 			throws MalformedURLException, IOException {
+		return getTranslatedBoxVal(prevFile, currFile, boundsStr, bufferSize, null);
+	}
 
+	public String getTranslatedBoxVal(String prevFile, String currFile, String boundsStr, int bufferSize,
+			String engineName) throws MalformedURLException, IOException {
+		return getTranslatedBoxVal(prevFile, currFile, boundsStr, bufferSize, engineName, null);
+	}
+
+	/**
+	 * Tracks a box with the given tracking engine, or the one selected for
+	 * the video if none is given. Given the motion model of the box's track,
+	 * searches around the predicted position with the motion search buffer
+	 * first, and the whole buffer only if nothing is found there; the model
+	 * is then updated with the result.
+	 */
+	public String getTranslatedBoxVal(String prevFile, String currFile, String boundsStr, int bufferSize,
+			String engineName, MotionModel motion) throws MalformedURLException, IOException {
+
+		long start = System.nanoTime();
 		String positionStr = boundsStr;
+		TrackingEngine engine = trackingEngines.select(currFile, engineName);
 		if(!largeBoundingBox(boundsStr)) {
-			System.out.println("Correlating \nsource: " + prevFile + "\nkernel: " + currFile);
-			
 			// Get bounding box dimensions with buffer width & height 
-			BufferedImage prevImage = ImageIO.read(new File(prevFile));
-			String bufferedBoundStr = getBufferedBoundingBox(boundsStr, prevImage.getWidth(), prevImage.getHeight(), bufferSize);
-			
-			List<Integer> position = getBoxPositionForImg(prevFile, currFile, bufferedBoundStr);
+			Dimension frameSize = frameReader.getDimensions(prevFile);
+			String bufferedBoundStr = getBufferedBoundingBox(boundsStr, frameSize.width, frameSize.height, bufferSize);
+			List<Integer> position = null;
+			long searchPixels = 0;
+
+			String predictedBoundStr = null;
+			if (motion != null && motion.canPredict()) {
+				String predictedStr = getShiftedBoundingBox(boundsStr, motion.getShiftX(), motion.getShiftY());
+				int motionBuffer = Math.min(bufferSize, taggingConf.getMotionSearchBuffer());
+				predictedBoundStr = getBufferedBoundingBox(predictedStr, frameSize.width, frameSize.height, motionBuffer);
+				position = getBoxPositionForImg(prevFile, currFile, boundsStr, predictedBoundStr, engine);
+				searchPixels += getArea(predictedBoundStr);
+				if (position == null) {
+					// Widen to where the box could be whether or not it kept moving
+					String widePredictedStr = getBufferedBoundingBox(predictedStr, frameSize.width, frameSize.height, bufferSize);
+					bufferedBoundStr = getUnion(bufferedBoundStr, widePredictedStr);
+				}
+				else {
+					bufferedBoundStr = predictedBoundStr;
+				}
+			}
+			if (position == null && !bufferedBoundStr.equals(predictedBoundStr)) {
+				position = getBoxPositionForImg(prevFile, currFile, boundsStr, bufferedBoundStr, engine);
+				searchPixels += getArea(bufferedBoundStr);
+			}
+			metrics.histogram("tracking.searchPixels").record(searchPixels);
+
+			long convertStart = System.nanoTime();
 			convertPositionsToActual(boundsStr, bufferedBoundStr, position);
+			metrics.histogram("tracking.coordinatesMicros").recordSince(convertStart);
 			
 			if(position != null) {
 				positionStr = position.toString();
 			}
+			if (motion != null) {
+				if (position != null) {
+					motion.observe(position.get(0) - getCoordinate(boundsStr, 0), position.get(1) - getCoordinate(boundsStr, 1));
+				}
+				else {
+					motion.reset();
+				}
+			}
+		}
+		metrics.histogram("tracking.boxMicros").recordSince(start);
+		if (log.isDebugEnabled() && tracked.incrementAndGet() % taggingConf.getTrackingLogSampleRate() == 0) {
+			log.debug("Tracked box {} from {} to {} at {} with {} in {} us", boundsStr, prevFile, currFile, positionStr,
+					engine.getName(), (System.nanoTime() - start) / 1000);
 		}
 		return positionStr;
 	}
 
+	/**
+	 * Tracks a box on the tracking pool. The returned future fails with a
+	 * {@link RejectedExecutionException} right away when the pool is full,
+	 * and with a {@link TimeoutException} if the task only starts after the
+	 * tracking timeout, when its caller has already given up on it.
+	 */
+	public CompletableFuture<String> getTranslatedBoxValAsync(String prevFile, String currFile, String boundsStr, int bufferSize,
+			String engineName, MotionModel motion) {
+		return submit(() -> getTranslatedBoxVal(prevFile, currFile, boundsStr, bufferSize, engineName, motion));
+	}
+
+	/**
+	 * Tracks several boxes from the previous frame to the current one in
+	 * parallel on the tracking pool. The current frame is decoded once and
+	 * shared by all boxes; a box that fails to track is reported in its
+	 * result only. The motion models, if given, are those of each box.
+	 */
+	public CompletableFuture<List<BoxResult>> getTranslatedBoxValsAsync(String prevFile, String currFile, List<String> boundsStrs,
+			int bufferSize, String engineName, List<MotionModel> motions) {
+		// Keep the decoded frame cached while its boxes read their regions from it
+		CompletableFuture<Frame> currFrame = boundsStrs.size() > 1
+				? submit(() -> frameCache.acquire(currFile))
+				: CompletableFuture.completedFuture(null);
+
+		// A frame that fails to preload only means each box reads its own region
+		return currFrame.handle((frame, e) -> frame).thenCompose(frame -> {
+			List<CompletableFuture<BoxResult>> results = new ArrayList<>();
+			for (int i = 0; i < boundsStrs.size(); i++) {
+				String boundsStr = boundsStrs.get(i);
+				MotionModel motion = motions == null ? null : motions.get(i);
+				results.add(getTranslatedBoxValAsync(prevFile, currFile, boundsStr, bufferSize, engineName, motion)
+						.handle((position, e) -> toBoxResult(boundsStr, position, e)));
+			}
+			return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()])).handle((done, e) -> {
+				if (frame != null) {
+					frame.close();
+				}
+				return results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+			});
+		});
+	}
+
+	/**
+	 * Tracks several boxes like {@link #getTranslatedBoxValsAsync}, waiting
+	 * for the results.
+	 */
+	public List<BoxResult> getTranslatedBoxVals(String prevFile, String currFile, List<String> boundsStrs, int bufferSize,
+			String engineName, List<MotionModel> motions) throws InterruptedException {
+		try {
+			return getTranslatedBoxValsAsync(prevFile, currFile, boundsStrs, bufferSize, engineName, motions).get();
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private <T> CompletableFuture<T> submit(Callable<T> task) {
+		long deadline = System.currentTimeMillis() + taggingConf.getTrackingTimeoutMillis();
+		CompletableFuture<T> future = new CompletableFuture<>();
+		try {
+			trackingExecutor.execute(() -> {
+				if (System.currentTimeMillis() > deadline) {
+					future.completeExceptionally(new TimeoutException("Tracking timed out in the queue"));
+					return;
+				}
+				try {
+					future.complete(task.call());
+				}
+				catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private BoxResult toBoxResult(String boundsStr, String position, Throwable e) {
+		if (e == null) {
+			return new BoxResult(boundsStr, position.replaceAll("[\\[\\] ]", ""), null);
+		}
+		Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+		if (cause instanceof RejectedExecutionException) {
+			return new BoxResult(boundsStr, null, "Tracking is overloaded");
+		}
+		if (cause instanceof TimeoutException) {
+			return new BoxResult(boundsStr, null, "Tracking timed out");
+		}
+		return new BoxResult(boundsStr, null, cause.toString());
+	}
+
 	private boolean largeBoundingBox(String boundsStr) {
 		int w = Integer.parseInt(Long.toString(Math.round(Double.parseDouble(boundsStr.split(",")[2]))));
 		int h = Integer.parseInt(Long.toString(Math.round(Double.parseDouble(boundsStr.split(",")[3]))));
@@ -89,77 +266,63 @@ public class BoundingBoxesManager {
 		
 		return x1 + "," + y1 + "," + wBuff + "," + hBuff;
 	}
-	
-	public List<Integer> getBoxPositionForImg(String prevFile, String currFile, String bufferedBoundStr) {
-		System.loadLibrary( Core.NATIVE_LIBRARY_NAME );
-		
-	    Mat source = Highgui.imread(prevFile, Highgui.CV_LOAD_IMAGE_GRAYSCALE);
-	    Mat kernel = Highgui.imread(currFile, Highgui.CV_LOAD_IMAGE_GRAYSCALE);
 
-	    System.out.println("getBoxPositionForImg: bufferedBoundStr->" + bufferedBoundStr);
-	    
+	private String getShiftedBoundingBox(String boundsStr, int dx, int dy) {
+		return (getCoordinate(boundsStr, 0) + dx) + "," + (getCoordinate(boundsStr, 1) + dy) + ","
+				+ getCoordinate(boundsStr, 2) + "," + getCoordinate(boundsStr, 3);
+	}
+
+	/** Returns the smallest box holding both boxes, which are within the frame. */
+	private String getUnion(String boundsStr, String otherBoundsStr) {
+		int x1 = Math.min(getCoordinate(boundsStr, 0), getCoordinate(otherBoundsStr, 0));
+		int y1 = Math.min(getCoordinate(boundsStr, 1), getCoordinate(otherBoundsStr, 1));
+		int x2 = Math.max(getCoordinate(boundsStr, 0) + getCoordinate(boundsStr, 2),
+				getCoordinate(otherBoundsStr, 0) + getCoordinate(otherBoundsStr, 2));
+		int y2 = Math.max(getCoordinate(boundsStr, 1) + getCoordinate(boundsStr, 3),
+				getCoordinate(otherBoundsStr, 1) + getCoordinate(otherBoundsStr, 3));
+		return x1 + "," + y1 + "," + (x2 - x1) + "," + (y2 - y1);
+	}
+
+	private long getArea(String boundsStr) {
+		return (long) Math.max(0, getCoordinate(boundsStr, 2)) * Math.max(0, getCoordinate(boundsStr, 3));
+	}
+
+	/** Returns the x, y, w or h of a box, rounded to a whole pixel. */
+	private int getCoordinate(String boundsStr, int index) {
+		return (int) Math.round(Double.parseDouble(boundsStr.split(",")[index]));
+	}
+	
+	/**
+	 * Returns the midpoint of a box in a buffered region of the current
+	 * frame, as found by the given engine, or null if it found none. The
+	 * region is around the box, or around where the box is predicted to be.
+	 */
+	public List<Integer> getBoxPositionForImg(String prevFile, String currFile, String boundsStr, String bufferedBoundStr,
+			TrackingEngine engine) throws IOException {
 	    int x = Integer.parseInt(bufferedBoundStr.split(",")[0]);
 	    int y = Integer.parseInt(bufferedBoundStr.split(",")[1]);
 	    int w = Integer.parseInt(bufferedBoundStr.split(",")[2]);
 	    int h = Integer.parseInt(bufferedBoundStr.split(",")[3]);
+	    if (w <= 0 || h <= 0) {
+	    	return null;
+	    }
+	    Rect searchRegion = new Rect(x, y, w, h);
 
-	    System.out.println("getBoxPositionForImg: source->" + source.rows() + "x" + source.cols());
-	    System.out.println("getBoxPositionForImg: kernel->" + kernel.rows() + "x" + kernel.cols());
-	    System.out.println("getBoxPositionForImg: cropedImage->" + y + ","+ (y+h) + "," + x + "," + (x+w));
-	    
-	    Mat cropedSource = source.submat(y, y+h, x, x+w);
-	    Mat cropedKernel = kernel.submat(y, y+h, x, x+w);
-	    
-	    Mat convertedSource = new Mat();
-		cropedSource.convertTo(convertedSource, CvType.CV_8U);
-		Mat convertedKernel = new Mat();
-		cropedKernel.convertTo(convertedKernel, CvType.CV_8U);
-		
-//		MinMaxLocResult result = Core.minMaxLoc(convertedKernel);
-//	    System.out.println("location: " + result.maxLoc);
-//	    System.out.println("min-max: " + result.minVal + " <  " + result.maxVal);
-	    
-        Mat destination = new Mat(convertedSource.rows(), convertedSource.cols(), CvType.CV_64F);
-        
-        /*
-         *  Plan A: Filter 2D approach
-         *  Use correlation from OpenCV to find bounding box
-         */
-        /*
-        Imgproc.filter2D(convertedKernel, destination, CvType.CV_64F, convertedSource, new Point(-1,-1), 0, Imgproc.BORDER_CONSTANT);
-	    MinMaxLocResult result = Core.minMaxLoc(destination);
-	    System.out.println("location: " + result.maxLoc);
-	    System.out.println("min-max: " + result.minVal + " <  " + result.maxVal);
-        List<Integer> position = new ArrayList<Integer>();
-        position.add(Integer.parseInt(Long.toString(Math.round(result.maxLoc.x)))); //A. Filter 2D approach
-        position.add(Integer.parseInt(Long.toString(Math.round(result.maxLoc.y)))); //A. Filter 2D approach
-	    */
-        
-        /*
-         *  Plan B: Brightest spot in next frame (local search)
-         */
-        /* getBrightPixels(destination); */
-        
-        /*
-         *  Plan C: Threshold - Opening - CCA 
-         *  search the neighborhood for the bright region using the threshold, opening, and CCA. 
-         *  If there are no connected components (> 1 white pixel touching) found during CCA, 
-         *  we can just place the bounding box in the same place as the previous frame.
-         */
-        Mat thresholdedImg = new Mat(convertedSource.rows(), convertedSource.cols(), CvType.CV_8U);
-	    double threshhold = Imgproc.threshold(convertedKernel, thresholdedImg, taggingConf.getBoxPixelThreshold(), 255, Imgproc.THRESH_BINARY);
-//	    showImageFromMat(thresholdedImg.clone());
-	    
-	    //Mat newKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(new Point(3,3)));
-	    //Imgproc.morphologyEx(thresholdedImg, destination, Imgproc.MORPH_OPEN, newKernel);
-
-//	    System.out.println("Img:");
-//	    printImg(thresholdedImg);
-	    int[][] destImgArr = convertMatToArray(thresholdedImg);
-//	    showImageFromArray(destImgArr);
-	    List<Integer> position = connectedComponentMgr.findConnectedComponent(destImgArr);
+	    // The box itself, within the frame
+	    Dimension frameSize = frameReader.getDimensions(prevFile);
+	    int boxX = Math.max(0, getCoordinate(boundsStr, 0));
+	    int boxY = Math.max(0, getCoordinate(boundsStr, 1));
+	    int boxW = Math.min(frameSize.width, boxX + getCoordinate(boundsStr, 2)) - boxX;
+	    int boxH = Math.min(frameSize.height, boxY + getCoordinate(boundsStr, 3)) - boxY;
+	    if (boxW <= 0 || boxH <= 0) {
+	    	return null;
+	    }
 
-	    return position; 
+	    long trackStart = System.nanoTime();
+	    List<Integer> position = engine.track(prevFile, currFile, new Rect(boxX, boxY, boxW, boxH), searchRegion);
+	    metrics.histogram("tracking.engine." + engine.getName() + ".trackMicros").recordSince(trackStart);
+	    // Callers adjust the midpoint in place
+	    return position == null ? null : new ArrayList<>(position);
 	}
 	
 	private void printImg(Mat img) {
@@ -172,25 +335,8 @@ public class BoundingBoxesManager {
 		}
 	}
 	
-	private List<String> getBrightPixels(Mat img) {
-		List<String> points = new ArrayList<String>(); 
-		for(int i= 0; i< img.rows(); i++) {
-			for(int j = 0; j < img.cols(); j++) {
-				double[] data = img.get(i, j);
-				if(data[0] > 0.0) {
-					points.add(i + "," +j);
-				}
-			}
-		}
-		return points;
-	}
-
 	private void convertPositionsToActual(String boundsStr, String bufferedBoundStr, List<Integer> position) {
 		if(position != null) {
-			System.out.println("input box:\t" + boundsStr);
-			System.out.println("buffered box:\t" + bufferedBoundStr);
-			System.out.println("position in buff bx:\t" + position);
-			
 			int x = position.remove(0);
 			int bbX = Integer.parseInt(boundsStr.split(",")[2]);
 			int buffX = Integer.parseInt(bufferedBoundStr.split(",")[0]);
@@ -205,18 +351,7 @@ public class BoundingBoxesManager {
 			
 			position.add(bbX);
 			position.add(bbY);
-			System.out.println("output box:\t" + position + "\n");
-		}
-	}
-	
-	private int[][] convertMatToArray(Mat img) {
-		int[][] points = new int[img.cols()][img.rows()]; 
-		for(int i= 0; i< img.cols(); i++) {
-			for(int j = 0; j < img.rows(); j++) {
-				points[i][j] = Integer.parseInt(Long.toString(Math.round(img.get(j, i)[0])));
-			}
 		}
-		return points;
 	}
 	
 	public static void showImageFromMat(Mat img) {
@@ -0,0 +1,87 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Core.MinMaxLocResult;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.service.MatPool.Slot;
+
+/**
+ * Takes the brightest box-sized spot of the search region, from a mean
+ * filter the size of the box, so a lone hot pixel does not outshine a warm
+ * body. The cheapest engine: the filter costs the same for any box size and
+ * the region is never copied out of OpenCV.
+ */
+@Component
+public class BrightestBlobTrackingEngine implements TrackingEngine {
+
+	public static final String NAME = "brightest-blob";
+
+	/** The center of the filter. */
+	private static final Point ANCHOR = new Point(-1, -1);
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private FrameReader frameReader;
+
+	@Autowired
+	private MatPool matPool;
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public List<Integer> track(String prevFile, String currFile, Rect box, Rect searchRegion) throws IOException {
+		if (frameReader.countBrightPixels(currFile, searchRegion) == 0) {
+			return null;
+		}
+		Mat region = frameReader.readRegion(currFile, searchRegion, Slot.REGION);
+		Mat padded = null;
+		Mat inner = null;
+		Mat blurred = null;
+		try {
+			// Nothing in the region is hot enough to track
+			if (Core.minMaxLoc(region).maxVal <= taggingConf.getBoxPixelThreshold()) {
+				return null;
+			}
+			// Pooled Mats are views of larger buffers, so the filter reads the border padded here
+			int top = box.height / 2, left = box.width / 2;
+			padded = matPool.get(Slot.PADDED, region.rows() + box.height - 1, region.cols() + box.width - 1);
+			Imgproc.copyMakeBorder(region, padded, top, box.height - 1 - top, left, box.width - 1 - left,
+					Imgproc.BORDER_DEFAULT | Imgproc.BORDER_ISOLATED);
+			inner = padded.submat(top, top + region.rows(), left, left + region.cols());
+			blurred = matPool.get(Slot.FILTERED, region.rows(), region.cols());
+			Imgproc.blur(inner, blurred, new Size(box.width, box.height), ANCHOR, Imgproc.BORDER_DEFAULT);
+			MinMaxLocResult brightest = Core.minMaxLoc(blurred);
+			return Arrays.asList((int) brightest.maxLoc.x, (int) brightest.maxLoc.y);
+		}
+		finally {
+			region.release();
+			if (padded != null) {
+				padded.release();
+			}
+			if (inner != null) {
+				inner.release();
+			}
+			if (blurred != null) {
+				blurred.release();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,205 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.util.Arrays;
+
+/**
+ * Two-pass raster labeling of 4-connected components over a binary image held
+ * as a row-major {@code byte[]} (any non-zero byte is a bright pixel).
+ *
+ * Provisional labels are merged with a union-find over plain {@code int[]}
+ * arrays, and per-component statistics (area, bounding box, centroid) are
+ * gathered in the second pass, so no objects are created per pixel. Scratch
+ * buffers are grown on demand and reused between calls, hence an instance
+ * must not be shared between threads.
+ */
+public class ComponentLabeler {
+
+	private static final int INITIAL_LABELS = 64;
+
+	/** The component id of each pixel of the last image (0 for background). */
+	private int[] labels = new int[0];
+
+	/** Union-find parent links of the provisional labels. */
+	private int[] parent = new int[INITIAL_LABELS];
+
+	/** Final component ids of the provisional labels. */
+	private int[] ids = new int[INITIAL_LABELS];
+
+	private int[] area = new int[INITIAL_LABELS];
+	private int[] minX = new int[INITIAL_LABELS];
+	private int[] minY = new int[INITIAL_LABELS];
+	private int[] maxX = new int[INITIAL_LABELS];
+	private int[] maxY = new int[INITIAL_LABELS];
+	private long[] sumX = new long[INITIAL_LABELS];
+	private long[] sumY = new long[INITIAL_LABELS];
+
+	/** The number of components found in the last image. */
+	private int count;
+
+	/**
+	 * Labels the given image and returns the number of components found.
+	 * Components are numbered from 1 to the returned count.
+	 */
+	public int label(byte[] pixels, int width, int height) {
+		int size = width * height;
+		if (pixels.length < size) {
+			throw new IllegalArgumentException("Expected " + size + " pixels but got " + pixels.length);
+		}
+		if (labels.length < size) {
+			labels = new int[size];
+		}
+
+		// Pass 1: provisional labels, recording equivalences
+		int next = 0;
+		for (int y = 0, idx = 0; y < height; y++) {
+			for (int x = 0; x < width; x++, idx++) {
+				if (pixels[idx] == 0) {
+					labels[idx] = 0;
+					continue;
+				}
+				int left = x > 0 ? labels[idx - 1] : 0;
+				int up = y > 0 ? labels[idx - width] : 0;
+				if (left == 0 && up == 0) {
+					next++;
+					ensureLabelCapacity(next + 1);
+					parent[next] = next;
+					labels[idx] = next;
+				}
+				else if (left == 0) {
+					labels[idx] = up;
+				}
+				else {
+					labels[idx] = left;
+					if (up != 0 && up != left) {
+						union(left, up);
+					}
+				}
+			}
+		}
+
+		// Resolve roots; roots always point at the smallest label of their set
+		count = 0;
+		for (int l = 1; l <= next; l++) {
+			int root = find(l);
+			ids[l] = root == l ? ++count : ids[root];
+		}
+
+		Arrays.fill(area, 0, count + 1, 0);
+		Arrays.fill(minX, 0, count + 1, Integer.MAX_VALUE);
+		Arrays.fill(minY, 0, count + 1, Integer.MAX_VALUE);
+		Arrays.fill(maxX, 0, count + 1, Integer.MIN_VALUE);
+		Arrays.fill(maxY, 0, count + 1, Integer.MIN_VALUE);
+		Arrays.fill(sumX, 0, count + 1, 0L);
+		Arrays.fill(sumY, 0, count + 1, 0L);
+
+		// Pass 2: final ids and statistics
+		for (int y = 0, idx = 0; y < height; y++) {
+			for (int x = 0; x < width; x++, idx++) {
+				int provisional = labels[idx];
+				if (provisional == 0) {
+					continue;
+				}
+				int id = ids[provisional];
+				labels[idx] = id;
+				area[id]++;
+				if (x < minX[id]) minX[id] = x;
+				if (x > maxX[id]) maxX[id] = x;
+				if (y < minY[id]) minY[id] = y;
+				if (y > maxY[id]) maxY[id] = y;
+				sumX[id] += x;
+				sumY[id] += y;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the id of the largest component having at least
+	 * {@code minArea} pixels, or -1 if there is none. Of components of the
+	 * same size, the first in raster order is returned.
+	 */
+	public int largestComponent(int minArea) {
+		int largest = -1;
+		int largestArea = Math.max(minArea, 1) - 1;
+		for (int id = 1; id <= count; id++) {
+			if (area[id] > largestArea) {
+				largest = id;
+				largestArea = area[id];
+			}
+		}
+		return largest;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/** Returns the component id of a pixel of the last labeled image. */
+	public int labelAt(int x, int y, int width) {
+		return labels[y * width + x];
+	}
+
+	public int area(int id) {
+		return area[id];
+	}
+
+	public int minX(int id) {
+		return minX[id];
+	}
+
+	public int minY(int id) {
+		return minY[id];
+	}
+
+	public int maxX(int id) {
+		return maxX[id];
+	}
+
+	public int maxY(int id) {
+		return maxY[id];
+	}
+
+	public double centroidX(int id) {
+		return (double) sumX[id] / area[id];
+	}
+
+	public double centroidY(int id) {
+		return (double) sumY[id] / area[id];
+	}
+
+	private int find(int l) {
+		while (parent[l] != l) {
+			parent[l] = parent[parent[l]];
+			l = parent[l];
+		}
+		return l;
+	}
+
+	private void union(int a, int b) {
+		int rootA = find(a);
+		int rootB = find(b);
+		if (rootA < rootB) {
+			parent[rootB] = rootA;
+		}
+		else if (rootB < rootA) {
+			parent[rootA] = rootB;
+		}
+	}
+
+	private void ensureLabelCapacity(int capacity) {
+		if (parent.length >= capacity) {
+			return;
+		}
+		int newLength = Math.max(capacity, parent.length * 2);
+		parent = Arrays.copyOf(parent, newLength);
+		ids = Arrays.copyOf(ids, newLength);
+		area = Arrays.copyOf(area, newLength);
+		minX = Arrays.copyOf(minX, newLength);
+		minY = Arrays.copyOf(minY, newLength);
+		maxX = Arrays.copyOf(maxX, newLength);
+		maxY = Arrays.copyOf(maxY, newLength);
+		sumX = Arrays.copyOf(sumX, newLength);
+		sumY = Arrays.copyOf(sumY, newLength);
+	}
+
+}
@@ -0,0 +1,199 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.opencsv.CSVParser;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+
+/**
+ * Streams an option file as one row per video, frame, box and label, reading
+ * one record at a time so memory does not grow with the file.
+ */
+@Component
+public class DatasetExporter {
+
+	public static final String JSONL = "jsonl";
+	public static final String CSV = "csv";
+
+	/** A box coordinate, as JSON allows numbers. */
+	private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+	private static final String[] COLUMNS = { "video", "entry", "annotator", "frame", "x", "y", "w", "h", "label" };
+
+	@Autowired
+	private OptionFileStore optionFileStore;
+
+	@Autowired
+	private TrackCodec trackCodec;
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+
+	/** Writes one row. */
+	private interface RowWriter {
+
+		void write(String[] row) throws IOException;
+
+	}
+
+	/**
+	 * Writes the boxes of an option file in the given format, keeping only
+	 * the rows matching the filters that are not null. Returns the number of
+	 * rows written.
+	 */
+	public long export(String file, String format, String video, String label, String annotator, OutputStream out)
+			throws IOException {
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		RowWriter rowWriter;
+		JsonGenerator generator = null;
+		CSVWriter csvWriter = null;
+		if (JSONL.equals(format)) {
+			generator = jsonFactory.createGenerator(writer);
+			generator.setRootValueSeparator(null);
+			JsonGenerator json = generator;
+			rowWriter = row -> {
+				json.writeStartObject();
+				for (int i = 0; i < COLUMNS.length; i++) {
+					if (i >= 4 && i <= 7) {
+						json.writeFieldName(COLUMNS[i]);
+						json.writeNumber(row[i]);
+					}
+					else {
+						json.writeStringField(COLUMNS[i], row[i]);
+					}
+				}
+				json.writeEndObject();
+				json.writeRaw('\n');
+			};
+		}
+		else if (CSV.equals(format)) {
+			csvWriter = new CSVWriter(writer);
+			csvWriter.writeNext(COLUMNS);
+			rowWriter = csvWriter::writeNext;
+		}
+		else {
+			throw new IllegalArgumentException("Unknown export format " + format);
+		}
+
+		long rows = 0;
+		if (Files.exists(Paths.get(file))) {
+			rows = exportRows(file, video, label, annotator, rowWriter);
+		}
+		if (generator != null) {
+			generator.flush();
+		}
+		if (csvWriter != null) {
+			csvWriter.flush();
+		}
+		writer.flush();
+		return rows;
+	}
+
+	private long exportRows(String file, String video, String label, String annotator, RowWriter rowWriter)
+			throws IOException {
+		long[] rows = new long[1];
+		String[] row = new String[COLUMNS.length];
+		// Records still being written by the journal are left out
+		InputStream in = new LimitedInputStream(Files.newInputStream(Paths.get(file)), optionFileStore.getLength(file));
+		try (CSVReader reader = new CSVReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+				CSVParser.DEFAULT_SEPARATOR, CSVParser.DEFAULT_QUOTE_CHARACTER, CSVParser.NULL_CHARACTER)) {
+			String[] record;
+			while ((record = reader.readNext()) != null) {
+				if (record.length < 3 || (video != null && !video.equals(record[0]))) {
+					continue;
+				}
+				int json = 2;
+				while (json < record.length && !record[json].startsWith("{")) {
+					json++;
+				}
+				String recordAnnotator = json + 1 < record.length ? record[json + 1] : "";
+				if (json == record.length || (annotator != null && !annotator.equals(recordAnnotator))) {
+					continue;
+				}
+				row[0] = record[0];
+				row[1] = record[1];
+				row[2] = recordAnnotator;
+				trackCodec.forEachBox(record[json], (frame, box, boxLabel) -> {
+					String[] bounds = box.split(",");
+					if (bounds.length != 4 || (label != null && !label.equals(boxLabel)) || !isNumeric(bounds)) {
+						return;
+					}
+					row[3] = frame;
+					System.arraycopy(bounds, 0, row, 4, 4);
+					row[8] = boxLabel;
+					rowWriter.write(row);
+					rows[0]++;
+				});
+			}
+		}
+		return rows[0];
+	}
+
+	private static boolean isNumeric(String[] values) {
+		for (String value : values) {
+			if (!NUMBER.matcher(value).matches()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Reads no further than a given number of bytes. */
+	private static class LimitedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		private LimitedInputStream(InputStream in, long limit) {
+			super(in);
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = super.read(b, off, (int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+	}
+
+}
@@ -0,0 +1,19 @@
+package edu.usc.teamcore.tagger.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a delta is based on another version of a draft than the
+ * current one, in which case the client resends its full state.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class DraftConflictException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public DraftConflictException(String id, int baseVersion, int version) {
+		super("Draft " + id + " is at version " + version + ", not " + baseVersion);
+	}
+
+}
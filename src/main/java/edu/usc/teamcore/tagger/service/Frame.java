@@ -0,0 +1,147 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * A decoded grayscale frame whose native Mat is released once the cache and
+ * every reader have closed it. Readers must treat the Mat as read-only.
+ */
+public class Frame implements AutoCloseable {
+
+	/** The path the frame was decoded from. */
+	private final String path;
+
+	/** The size of the file when it was decoded, in bytes. */
+	private final long fileSize;
+
+	/** The modification time of the file when it was decoded. */
+	private final long modifiedMillis;
+
+	/** The decoded grayscale image. */
+	private final Mat mat;
+
+	/**
+	 * The integral image of the pixels above the box pixel threshold, one
+	 * row and column larger than the image and stored row by row, so any
+	 * rectangle's count takes four array lookups. At four bytes a pixel it
+	 * takes four times the memory of the image, which the frame's size
+	 * accounts for.
+	 */
+	private final int[] brightCounts;
+
+	/** The row length of {@link #brightCounts}. */
+	private final int brightCountsStride;
+
+	/** The size of the native image and its counts, in bytes. */
+	private final long sizeInBytes;
+
+	private final AtomicInteger refCount = new AtomicInteger(1);
+
+	/** Whether the frame was decoded ahead of time and not read yet. */
+	private final AtomicBoolean prefetched = new AtomicBoolean();
+
+	public Frame(String path, long fileSize, long modifiedMillis, Mat mat, int[] brightCounts) {
+		this.path = path;
+		this.fileSize = fileSize;
+		this.modifiedMillis = modifiedMillis;
+		this.mat = mat;
+		this.brightCounts = brightCounts;
+		this.brightCountsStride = mat.cols() + 1;
+		this.sizeInBytes = mat.total() * mat.elemSize() + (long) brightCounts.length * Integer.BYTES;
+	}
+
+	/**
+	 * Returns a frame of an image decoded from a file of the given size and
+	 * modification time, with the counts of its pixels above the given
+	 * threshold.
+	 */
+	static Frame withBrightCounts(String path, long fileSize, long modifiedMillis, Mat mat, double threshold) {
+		Mat bright = new Mat();
+		Mat integral = new Mat();
+		Imgproc.threshold(mat, bright, threshold, 1, Imgproc.THRESH_BINARY);
+		Imgproc.integral(bright, integral, CvType.CV_32S);
+		bright.release();
+		int[] brightCounts = new int[(int) integral.total()];
+		integral.get(0, 0, brightCounts);
+		integral.release();
+		return new Frame(path, fileSize, modifiedMillis, mat, brightCounts);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public long getModifiedMillis() {
+		return modifiedMillis;
+	}
+
+	/** Returns whether the frame was decoded from the file as it now is. */
+	public boolean isDecodedFrom(BasicFileAttributes attributes) {
+		return isDecodedFrom(attributes.size(), attributes.lastModifiedTime().toMillis());
+	}
+
+	/** Returns whether the frame was decoded from a file of the given size and modification time. */
+	public boolean isDecodedFrom(long fileSize, long modifiedMillis) {
+		return this.fileSize == fileSize && this.modifiedMillis == modifiedMillis;
+	}
+
+	public Mat getMat() {
+		return mat;
+	}
+
+	public int getWidth() {
+		return mat.cols();
+	}
+
+	public int getHeight() {
+		return mat.rows();
+	}
+
+	public long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	/** Returns the number of pixels above the box pixel threshold in a region of the frame. */
+	public int countBrightPixels(Rect region) {
+		int x1 = region.x, y1 = region.y, x2 = region.x + region.width, y2 = region.y + region.height;
+		return brightCount(y2, x2) - brightCount(y1, x2) - brightCount(y2, x1) + brightCount(y1, x1);
+	}
+
+	private int brightCount(int row, int col) {
+		return brightCounts[row * brightCountsStride + col];
+	}
+
+	void setPrefetched(boolean prefetched) {
+		this.prefetched.set(prefetched);
+	}
+
+	/** Returns whether the frame was prefetched, clearing the flag. */
+	boolean consumePrefetched() {
+		return prefetched.compareAndSet(true, false);
+	}
+
+	/** Takes another reference to this frame, to be given back with {@link #close()}. */
+	Frame retain() {
+		refCount.incrementAndGet();
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if (refCount.decrementAndGet() == 0) {
+			mat.release();
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+
+/**
+ * LRU cache of decoded grayscale frames keyed by path and bounded by the
+ * size of the cached images and their counts. During a labeling session the
+ * current frame of one box request is the previous frame of the next, so each
+ * JPEG is only decoded once. Each frame is cached with the counts of its
+ * bright pixels and the size and modification time of its file, and is
+ * decoded again once the file changes.
+ */
+@Component
+public class FrameCache {
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	private final LinkedHashMap<String, Frame> frames = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long sizeInBytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong prefetchHits = new AtomicLong();
+	private final AtomicLong prefetchWasted = new AtomicLong();
+
+	/**
+	 * Returns the decoded grayscale frame at the given path, decoding it on a
+	 * miss. The caller must close the returned frame when done with it.
+	 */
+	public Frame acquire(String path) throws IOException {
+		BasicFileAttributes attributes = stat(path);
+		synchronized (frames) {
+			Frame frame = current(path, attributes);
+			if (frame != null) {
+				recordHit(frame);
+				return frame.retain();
+			}
+		}
+		misses.incrementAndGet();
+		return put(decode(path, attributes));
+	}
+
+	/**
+	 * Decodes and caches a frame ahead of its first request, unless it is
+	 * cached already. Returns whether the frame was decoded.
+	 */
+	public boolean prefetch(String path) throws IOException {
+		BasicFileAttributes attributes = stat(path);
+		synchronized (frames) {
+			if (current(path, attributes) != null) {
+				return false;
+			}
+		}
+		Frame decoded = decode(path, attributes);
+		decoded.setPrefetched(true);
+		put(decoded).close();
+		return true;
+	}
+
+	/** Returns whether the frame at the given path is cached and its file unchanged since. */
+	public boolean contains(String path) {
+		try (Frame frame = acquireIfPresent(path, false)) {
+			return frame != null;
+		}
+	}
+
+	private Frame decode(String path, BasicFileAttributes attributes) throws IOException {
+		OpenCv.load();
+		Mat mat = Highgui.imread(path, Highgui.CV_LOAD_IMAGE_GRAYSCALE);
+		if (mat.empty()) {
+			throw new IOException("Unable to decode frame " + path);
+		}
+		return Frame.withBrightCounts(path, attributes.size(), attributes.lastModifiedTime().toMillis(), mat,
+				taggingConf.getBoxPixelThreshold());
+	}
+
+	private static BasicFileAttributes stat(String path) throws IOException {
+		return Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+	}
+
+	/**
+	 * Returns the cached frame at the given path if it was decoded from the
+	 * file as it now is, and otherwise drops it and returns null. The caller
+	 * must hold the lock on the frames.
+	 */
+	private Frame current(String path, BasicFileAttributes attributes) {
+		Frame frame = frames.get(path);
+		if (frame != null && !frame.isDecodedFrom(attributes)) {
+			remove(path);
+			return null;
+		}
+		return frame;
+	}
+
+	private void remove(String path) {
+		Frame removed = frames.remove(path);
+		sizeInBytes -= removed.getSizeInBytes();
+		removed.close();
+	}
+
+	private void recordHit(Frame frame) {
+		hits.incrementAndGet();
+		if (frame.consumePrefetched()) {
+			prefetchHits.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the cached frame at the given path without decoding it, or null
+	 * if it is not cached or its file changed since. The caller must close a
+	 * returned frame.
+	 */
+	public Frame acquireIfPresent(String path) {
+		return acquireIfPresent(path, true);
+	}
+
+	private Frame acquireIfPresent(String path, boolean hit) {
+		BasicFileAttributes attributes;
+		try {
+			attributes = stat(path);
+		}
+		catch (IOException e) {
+			return null;
+		}
+		synchronized (frames) {
+			Frame frame = current(path, attributes);
+			if (frame == null) {
+				return null;
+			}
+			if (hit) {
+				recordHit(frame);
+			}
+			return frame.retain();
+		}
+	}
+
+	/**
+	 * Caches a decoded frame, or returns the already cached one if another
+	 * thread decoded the same file first. A frame cached from an older
+	 * version of the file is replaced.
+	 */
+	private Frame put(Frame decoded) {
+		long maxBytes = taggingConf.getFrameCacheMaxBytes();
+		if (decoded.getSizeInBytes() > maxBytes) {
+			return decoded;
+		}
+		synchronized (frames) {
+			Frame existing = frames.get(decoded.getPath());
+			if (existing != null && existing.isDecodedFrom(decoded.getFileSize(), decoded.getModifiedMillis())) {
+				decoded.close();
+				return existing.retain();
+			}
+			if (existing != null) {
+				remove(decoded.getPath());
+			}
+			frames.put(decoded.getPath(), decoded.retain());
+			sizeInBytes += decoded.getSizeInBytes();
+
+			Iterator<Map.Entry<String, Frame>> eldest = frames.entrySet().iterator();
+			while (sizeInBytes > maxBytes && eldest.hasNext()) {
+				Frame evicted = eldest.next().getValue();
+				eldest.remove();
+				sizeInBytes -= evicted.getSizeInBytes();
+				evictions.incrementAndGet();
+				if (evicted.consumePrefetched()) {
+					prefetchWasted.incrementAndGet();
+				}
+				evicted.close();
+			}
+			return decoded;
+		}
+	}
+
+	/** Drops every cached frame. */
+	public void clear() {
+		synchronized (frames) {
+			frames.values().forEach(Frame::close);
+			frames.clear();
+			sizeInBytes = 0;
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/** Returns how many prefetched frames were read before being evicted. */
+	public long getPrefetchHits() {
+		return prefetchHits.get();
+	}
+
+	/** Returns how many prefetched frames were evicted without being read. */
+	public long getPrefetchWasted() {
+		return prefetchWasted.get();
+	}
+
+	public long getSizeInBytes() {
+		synchronized (frames) {
+			return sizeInBytes;
+		}
+	}
+
+	public int getSize() {
+		synchronized (frames) {
+			return frames.size();
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package edu.usc.teamcore.tagger.service;
+
+/**
+ * What a video's directory holds: the number and size of its frames, with
+ * the size, modification time and content hash of every frame.
+ */
+public class FrameManifest {
+
+	private final String video;
+	private final int width;
+	private final int height;
+	private final long[] sizes;
+	private final long[] modifiedMillis;
+	private final String[] hashes;
+
+	/** A hash of the frame hashes, which changes whenever any frame does. */
+	private final String etag;
+
+	/** The source stamp of the frames as of the scan. */
+	private final long sourceStamp;
+
+	public FrameManifest(String video, int width, int height, long[] sizes, long[] modifiedMillis, String[] hashes,
+			String etag, long sourceStamp) {
+		this.video = video;
+		this.width = width;
+		this.height = height;
+		this.sizes = sizes;
+		this.modifiedMillis = modifiedMillis;
+		this.hashes = hashes;
+		this.etag = etag;
+		this.sourceStamp = sourceStamp;
+	}
+
+	public String getVideo() {
+		return video;
+	}
+
+	public int getFrameCount() {
+		return sizes.length;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public long[] getSizes() {
+		return sizes;
+	}
+
+	public long[] getModifiedMillis() {
+		return modifiedMillis;
+	}
+
+	public String[] getHashes() {
+		return hashes;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public long getSourceStamp() {
+		return sourceStamp;
+	}
+
+}
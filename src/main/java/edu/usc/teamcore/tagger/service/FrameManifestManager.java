@@ -0,0 +1,272 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the frame manifests of videos, scanned from their directories on
+ * first use and rescanned once their source stamp changes, which a frame
+ * rewritten in place changes as well as one added or removed. A rescan
+ * only hashes the frames whose size or modification time changed.
+ */
+@Slf4j
+@Component
+public class FrameManifestManager {
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private FrameReader frameReader;
+
+	private final Map<String, FrameManifest> manifests = new ConcurrentHashMap<>();
+
+	/** Frame counts by video, with the directory modification time they were counted at. */
+	private final Map<String, long[]> frameCounts = new ConcurrentHashMap<>();
+
+	/**
+	 * Change counts of the video directories the video catalog watches,
+	 * counted up whenever a file in them changes.
+	 */
+	private final Map<String, AtomicLong> changeCounts = new ConcurrentHashMap<>();
+
+	/** Source stamps of watched videos, with the change count they were taken at. */
+	private final Map<String, long[]> sourceStamps = new ConcurrentHashMap<>();
+
+	/** Locks by video, so a directory is only scanned once at a time. */
+	private final Map<String, Object> scanLocks = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the up to date manifest of a video, scanning its directory if
+	 * needed.
+	 */
+	public FrameManifest getManifest(String video) throws IOException {
+		Path videoDir = videoDir(video);
+		if (!Files.isDirectory(videoDir)) {
+			throw new FrameNotFoundException("No video " + video);
+		}
+		long sourceStamp = getSourceStamp(video);
+		FrameManifest manifest = manifests.get(video);
+		if (manifest != null && manifest.getSourceStamp() == sourceStamp) {
+			return manifest;
+		}
+		synchronized (scanLocks.computeIfAbsent(video, v -> new Object())) {
+			manifest = manifests.get(video);
+			if (manifest == null || manifest.getSourceStamp() != sourceStamp) {
+				manifest = scan(video, videoDir, sourceStamp, manifest);
+				manifests.put(video, manifest);
+			}
+			return manifest;
+		}
+	}
+
+	/**
+	 * Returns a stamp of the frames of a video, which changes when a frame is
+	 * added or removed, and when one is rewritten in place, which leaves the
+	 * directory's modification time alone. The stamp of a watched directory
+	 * is only taken again once a file in it changed.
+	 */
+	public long getSourceStamp(String video) throws IOException {
+		AtomicLong changes = changeCounts.get(video);
+		if (changes == null) {
+			return statFrames(video);
+		}
+		long changeCount = changes.get();
+		long[] stamp = sourceStamps.get(video);
+		if (stamp != null && stamp[0] == changeCount) {
+			return stamp[1];
+		}
+		long sourceStamp = statFrames(video);
+		sourceStamps.put(video, new long[] { changeCount, sourceStamp });
+		return sourceStamp;
+	}
+
+	/**
+	 * Notes that a video directory is watched, before any change in it is
+	 * reported. A directory watched again may have changed in between.
+	 */
+	public void onWatched(String video) {
+		changeCounts.computeIfAbsent(video, v -> new AtomicLong()).incrementAndGet();
+	}
+
+	/** Notes that a file of a watched video directory changed. */
+	public void onChanged(String video) {
+		AtomicLong changes = changeCounts.get(video);
+		if (changes != null) {
+			changes.incrementAndGet();
+		}
+	}
+
+	/** Notes that a video directory is no longer watched. */
+	public void onUnwatched(String video) {
+		changeCounts.remove(video);
+		sourceStamps.remove(video);
+	}
+
+	/**
+	 * Stamps the frames of a video from one stat of the directory and of
+	 * every frame, numbered from 0 until the first missing one.
+	 */
+	private long statFrames(String video) throws IOException {
+		Path videoDir = videoDir(video);
+		long stamp = Files.getLastModifiedTime(videoDir).toMillis();
+		for (int i = 0;; i++) {
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(videoDir.resolve(FrameNames.frameName(video, i)),
+						BasicFileAttributes.class);
+			}
+			catch (NoSuchFileException e) {
+				return stamp;
+			}
+			stamp = 31 * (31 * stamp + attributes.size()) + attributes.lastModifiedTime().toMillis();
+		}
+	}
+
+	/**
+	 * Returns the number of frames of a video, counted from a listing of its
+	 * directory without reading the frames, or null if it has no directory.
+	 */
+	public Integer getFrameCount(String video) {
+		try {
+			Path videoDir = videoDir(video);
+			if (Files.isDirectory(videoDir)) {
+				return countFrames(video, videoDir);
+			}
+		}
+		catch (IOException | IllegalArgumentException e) {
+			log.warn("Unable to count the frames of {}: {}", video, e.toString());
+		}
+		return null;
+	}
+
+	/**
+	 * Lists the directory again once it is modified, which adding or removing
+	 * frames does, as rewriting frames in place leaves the count alone.
+	 */
+	private int countFrames(String video, Path videoDir) throws IOException {
+		long sourceModified = Files.getLastModifiedTime(videoDir).toMillis();
+		long[] count = frameCounts.get(video);
+		if (count == null || count[0] != sourceModified) {
+			// Frames are numbered from 0 until the first missing one
+			BitSet frames = new BitSet();
+			String prefix = video + "_";
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(videoDir)) {
+				for (Path file : files) {
+					String name = file.getFileName().toString();
+					int index = name.startsWith(prefix) ? FrameNames.frameIndex(name) : -1;
+					if (index >= 0 && name.length() == prefix.length() + 14) {
+						frames.set(index);
+					}
+				}
+			}
+			count = new long[] { sourceModified, frames.nextClearBit(0) };
+			frameCounts.put(video, count);
+		}
+		return (int) count[1];
+	}
+
+	private Path videoDir(String video) {
+		FrameNames.checkDirectory(video);
+		return Paths.get(taggingConf.getVideosDir(), video);
+	}
+
+	/**
+	 * Lists the frames of a video, numbered from 0 until the first missing
+	 * one, reusing the hashes of unchanged frames from the previous manifest.
+	 */
+	private FrameManifest scan(String video, Path videoDir, long sourceStamp, FrameManifest previous)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		List<Long> sizes = new ArrayList<>();
+		List<Long> modified = new ArrayList<>();
+		List<String> hashes = new ArrayList<>();
+		int hashed = 0;
+		for (int i = 0;; i++) {
+			Path frame = videoDir.resolve(FrameNames.frameName(video, i));
+			if (!Files.exists(frame)) {
+				break;
+			}
+			BasicFileAttributes attributes = Files.readAttributes(frame, BasicFileAttributes.class);
+			long size = attributes.size();
+			long modifiedMillis = attributes.lastModifiedTime().toMillis();
+			if (previous != null && i < previous.getFrameCount() && previous.getSizes()[i] == size
+					&& previous.getModifiedMillis()[i] == modifiedMillis) {
+				hashes.add(previous.getHashes()[i]);
+			}
+			else {
+				hashes.add(hash(frame));
+				hashed++;
+			}
+			sizes.add(size);
+			modified.add(modifiedMillis);
+		}
+
+		int width = 0, height = 0;
+		if (!sizes.isEmpty()) {
+			Dimension dimension = frameReader.probeDimensions(videoDir.resolve(FrameNames.frameName(video, 0)).toString());
+			width = dimension.width;
+			height = dimension.height;
+		}
+		MessageDigest digest = digest();
+		hashes.forEach(hash -> digest.update(hash.getBytes()));
+		FrameManifest manifest = new FrameManifest(video, width, height,
+				sizes.stream().mapToLong(Long::longValue).toArray(),
+				modified.stream().mapToLong(Long::longValue).toArray(), hashes.toArray(new String[hashes.size()]),
+				hex(digest.digest()), sourceStamp);
+		log.info("Scanned {} frames of {} ({} hashed) in {} ms", manifest.getFrameCount(), video, hashed,
+				System.currentTimeMillis() - start);
+		return manifest;
+	}
+
+	private static String hash(Path frame) throws IOException {
+		MessageDigest digest = digest();
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = Files.newInputStream(frame)) {
+			for (int read; (read = in.read(buffer)) > 0;) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return hex(digest.digest());
+	}
+
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** The first 16 bytes of a hash, in hex. */
+	private static String hex(byte[] hash) {
+		StringBuilder hex = new StringBuilder();
+		for (int i = 0; i < 16; i++) {
+			hex.append(String.format("%02x", hash[i]));
+		}
+		return hex.toString();
+	}
+
+}
@@ -0,0 +1,56 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Naming of the frame JPEGs of a video, which live at
+ * {@code <videosDir>/<dir>/<dir>_NNNNNNNNNN.jpg}.
+ */
+public final class FrameNames {
+
+	private static final Pattern FRAME_FILE = Pattern.compile("(.+)_(\\d{10})\\.jpg");
+
+	private FrameNames() {
+	}
+
+	/** Returns the file name of a frame, which is also its key in label data. */
+	public static String frameName(String directory, int index) {
+		return directory + "_" + String.format("%010d", index) + ".jpg";
+	}
+
+	/** Returns the path of a frame relative to the videos directory. */
+	public static String relativePath(String directory, int index) {
+		return directory + "/" + frameName(directory, index);
+	}
+
+	/**
+	 * Returns the index of a frame from its file name or relative path, or -1
+	 * if it is not named like a frame.
+	 */
+	public static int frameIndex(String path) {
+		String fileName = path.substring(path.lastIndexOf('/') + 1);
+		Matcher matcher = FRAME_FILE.matcher(fileName);
+		return matcher.matches() ? Integer.parseInt(matcher.group(2)) : -1;
+	}
+
+	/**
+	 * Returns the video directory of a frame from its file name or path, or
+	 * null if it is not named like a frame.
+	 */
+	public static String directoryOf(String path) {
+		String fileName = path.substring(path.lastIndexOf('/') + 1);
+		Matcher matcher = FRAME_FILE.matcher(fileName);
+		return matcher.matches() ? matcher.group(1) : null;
+	}
+
+	/** Rejects directory names that could escape the videos directory. */
+	public static String checkDirectory(String directory) {
+		if (directory == null || directory.isEmpty() || directory.contains("/") || directory.contains("\\")
+				|| directory.contains("..")) {
+			throw new IllegalArgumentException("Invalid video directory: " + directory);
+		}
+		return directory;
+	}
+
+}
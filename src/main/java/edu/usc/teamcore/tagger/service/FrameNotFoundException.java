@@ -0,0 +1,18 @@
+package edu.usc.teamcore.tagger.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a video has no frame directory, or no frame at an index.
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class FrameNotFoundException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public FrameNotFoundException(String message) {
+		super(message);
+	}
+
+}
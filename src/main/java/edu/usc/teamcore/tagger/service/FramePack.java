@@ -0,0 +1,57 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.nio.file.Path;
+
+/**
+ * The frame JPEGs of a video concatenated into one file, with the offset
+ * and length of every frame.
+ */
+public class FramePack {
+
+	private final Path path;
+	private final long[] offsets;
+	private final int[] lengths;
+
+	/** A hash of the content, which changes whenever any frame does. */
+	private final String etag;
+
+	/** The source stamp of the frames as of the build. */
+	private final long sourceStamp;
+
+	public FramePack(Path path, long[] offsets, int[] lengths, String etag, long sourceStamp) {
+		this.path = path;
+		this.offsets = offsets;
+		this.lengths = lengths;
+		this.etag = etag;
+		this.sourceStamp = sourceStamp;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public long[] getOffsets() {
+		return offsets;
+	}
+
+	public int[] getLengths() {
+		return lengths;
+	}
+
+	public int getFrameCount() {
+		return offsets.length;
+	}
+
+	public long getSize() {
+		return offsets.length == 0 ? 0 : offsets[offsets.length - 1] + lengths[lengths.length - 1];
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public long getSourceStamp() {
+		return sourceStamp;
+	}
+
+}
@@ -0,0 +1,285 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import edu.usc.teamcore.tagger.config.ExecutorConfig;
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds and keeps the frame packs of videos. A pack is built from the
+ * video's directory on first use, in the background, into {@code <outputDir>/packs}, next to an
+ * index file, and rebuilt once the source stamp of its frames changes. Each frame tier has
+ * its own pack. Pack files are named by their etag and never rewritten, so
+ * a response reads the very pack its headers describe; the pack a rebuild
+ * replaces is kept for responses still being sent from it.
+ */
+@Slf4j
+@Component
+public class FramePackManager {
+
+	private static final String PACK = ".pack";
+
+	/** Pack etags, the hex of the first 16 bytes of a hash. */
+	private static final Pattern ETAG = Pattern.compile("[0-9a-f]{32}");
+	private static final String INDEX = ".idx";
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private FrameVariantCache variantCache;
+
+	@Autowired
+	private FrameManifestManager manifestManager;
+
+	@Autowired
+	@Qualifier(ExecutorConfig.PREFETCH_EXECUTOR)
+	private AsyncTaskExecutor prefetchExecutor;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final Map<String, FramePack> packs = new ConcurrentHashMap<>();
+
+	/** The packs queued or being built. */
+	private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+	/** Locks by video, so a pack is only built once at a time. */
+	private final Map<String, Object> buildLocks = new ConcurrentHashMap<>();
+
+	private Path packsDir;
+
+	@PostConstruct
+	public void init() throws IOException {
+		packsDir = Paths.get(taggingConf.getOutputDir(), "packs");
+		Files.createDirectories(packsDir);
+	}
+
+	/**
+	 * Returns the up to date pack of a video at the given tier, or null
+	 * while it is built. A missing or stale pack is built, with any missing
+	 * frame variants, on the prefetch pool, so no request waits for a whole
+	 * video to be encoded.
+	 */
+	public FramePack getBuiltPack(String video, FrameTier tier) throws IOException {
+		FrameNames.checkDirectory(video);
+		String name = packName(video, tier);
+		if (!Files.isDirectory(Paths.get(taggingConf.getVideosDir(), video))) {
+			throw new FrameNotFoundException("No video " + video);
+		}
+		long sourceStamp = manifestManager.getSourceStamp(video);
+		FramePack pack = packs.get(name);
+		if (pack != null && pack.getSourceStamp() == sourceStamp) {
+			return pack;
+		}
+		// The index of a pack built before a restart is read right away
+		FramePack indexed = readIndex(name);
+		if (indexed != null && indexed.getSourceStamp() == sourceStamp) {
+			packs.put(name, indexed);
+			return indexed;
+		}
+		if (building.add(name)) {
+			try {
+				prefetchExecutor.execute(() -> {
+					try {
+						buildIfStale(video, tier);
+					}
+					catch (IOException | RuntimeException e) {
+						log.warn("Unable to build frame pack of {}: {}", name, e.toString());
+					}
+					finally {
+						building.remove(name);
+					}
+				});
+			}
+			catch (RejectedExecutionException e) {
+				building.remove(name);
+				log.debug("Prefetch pool full, not building frame pack of {} yet", name);
+			}
+		}
+		return null;
+	}
+
+	private void buildIfStale(String video, FrameTier tier) throws IOException {
+		String name = packName(video, tier);
+		Path videoDir = Paths.get(taggingConf.getVideosDir(), video);
+		long sourceStamp = manifestManager.getSourceStamp(video);
+		synchronized (buildLocks.computeIfAbsent(name, n -> new Object())) {
+			FramePack pack = packs.get(name);
+			if (pack == null || pack.getSourceStamp() != sourceStamp) {
+				pack = readIndex(name);
+			}
+			if (pack == null || pack.getSourceStamp() != sourceStamp) {
+				FramePack previous = pack != null ? pack : packs.get(name);
+				pack = build(video, tier, name, videoDir, sourceStamp);
+				deleteStalePacks(name, pack, previous);
+			}
+			packs.put(name, pack);
+		}
+	}
+
+	/**
+	 * Returns the file of a video's pack at the given tier by its etag,
+	 * without checking the frames, as a pack file never changes. Returns
+	 * null if the pack is gone or another one was built since.
+	 */
+	public Path getPackFile(String video, FrameTier tier, String etag) {
+		FrameNames.checkDirectory(video);
+		if (!ETAG.matcher(etag).matches()) {
+			return null;
+		}
+		String name = packName(video, tier);
+		FramePack pack = packs.get(name);
+		if (pack != null && !pack.getEtag().equals(etag)) {
+			return null;
+		}
+		Path path = packPath(name, etag);
+		return Files.exists(path) ? path : null;
+	}
+
+	private static String packName(String video, FrameTier tier) {
+		return tier == FrameTier.FULL ? video : video + "." + tier.name().toLowerCase();
+	}
+
+	private Path packPath(String name, String etag) {
+		return packsDir.resolve(name + "." + etag + PACK);
+	}
+
+	private FramePack readIndex(String name) {
+		Path index = packsDir.resolve(name + INDEX);
+		if (!Files.exists(index)) {
+			return null;
+		}
+		try {
+			JsonNode node = mapper.readTree(index.toFile());
+			Path path = packPath(name, node.path("etag").asText());
+			if (!Files.exists(path)) {
+				return null;
+			}
+			int count = node.path("lengths").size();
+			long[] offsets = new long[count];
+			int[] lengths = new int[count];
+			long offset = 0;
+			for (int i = 0; i < count; i++) {
+				offsets[i] = offset;
+				lengths[i] = node.path("lengths").get(i).asInt();
+				offset += lengths[i];
+			}
+			if (Files.size(path) != offset) {
+				return null;
+			}
+			return new FramePack(path, offsets, lengths, node.path("etag").asText(),
+					node.path("sourceStamp").asLong());
+		}
+		catch (IOException e) {
+			log.warn("Unable to read frame pack index {}: {}", index, e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Concatenates the frames of a video, numbered from 0 until the first
+	 * missing one, and writes the index once the pack is complete.
+	 */
+	private FramePack build(String video, FrameTier tier, String name, Path videoDir, long sourceStamp)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		Path temp = packsDir.resolve(name + PACK + ".tmp");
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		List<Integer> lengths = new ArrayList<>();
+		try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+			for (int i = 0;; i++) {
+				Path frame = videoDir.resolve(FrameNames.frameName(video, i));
+				if (!Files.exists(frame)) {
+					break;
+				}
+				lengths.add((int) (long) variantCache.read(video, i, tier, variant -> Files.copy(variant, out)));
+			}
+		}
+
+		StringBuilder etag = new StringBuilder();
+		byte[] hash = digest.digest();
+		for (int i = 0; i < 16; i++) {
+			etag.append(String.format("%02x", hash[i]));
+		}
+		// An unchanged pack replaces its own file with the same bytes
+		Files.move(temp, packPath(name, etag.toString()), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		ObjectNode index = mapper.createObjectNode();
+		index.put("etag", etag.toString());
+		index.put("sourceStamp", sourceStamp);
+		ArrayNode lengthNodes = index.putArray("lengths");
+		lengths.forEach(lengthNodes::add);
+		Path indexPath = packsDir.resolve(name + INDEX);
+		Path indexTemp = packsDir.resolve(name + INDEX + ".tmp");
+		mapper.writeValue(indexTemp.toFile(), index);
+		Files.move(indexTemp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		FramePack pack = readIndex(name);
+		if (pack == null) {
+			throw new IOException("Unable to build frame pack of " + name);
+		}
+		log.info("Packed {} frames of {} ({} bytes) in {} ms", pack.getFrameCount(), name, pack.getSize(),
+				System.currentTimeMillis() - start);
+		return pack;
+	}
+
+	/**
+	 * Deletes the pack files of a name other than the current and previous
+	 * packs, including those left by a crash between building and indexing.
+	 */
+	private void deleteStalePacks(String name, FramePack current, FramePack previous) {
+		Pattern packName = Pattern.compile(Pattern.quote(name) + "(\\.[0-9a-f]{32})?" + Pattern.quote(PACK));
+		try (Stream<Path> files = Files.list(packsDir)) {
+			files.filter(file -> packName.matcher(file.getFileName().toString()).matches())
+				.filter(file -> !file.equals(current.getPath()) && (previous == null || !file.equals(previous.getPath())))
+				.forEach(file -> {
+					try {
+						Files.deleteIfExists(file);
+					}
+					catch (IOException e) {
+						log.warn("Unable to delete stale frame pack {}: {}", file, e.toString());
+					}
+				});
+		}
+		catch (IOException e) {
+			log.warn("Unable to list frame packs of {}: {}", name, e.toString());
+		}
+	}
+
+}
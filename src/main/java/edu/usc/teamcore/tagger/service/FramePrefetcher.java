@@ -0,0 +1,171 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.ExecutorConfig;
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decodes the next frames of the video an annotator session is on into the
+ * frame cache, so that the first box request on each frame finds it decoded.
+ * Each session has a bounded number of pending prefetches, and switching
+ * video drops the prefetches still pending for the previous one.
+ */
+@Slf4j
+@Component
+public class FramePrefetcher {
+
+	private static final int MAX_SESSIONS = 256;
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private FrameCache frameCache;
+
+	@Autowired
+	@Qualifier(ExecutorConfig.PREFETCH_EXECUTOR)
+	private AsyncTaskExecutor prefetchExecutor;
+
+	/** Prefetch state by session id, dropping the least recently active sessions. */
+	private final Map<String, Session> sessions = new LinkedHashMap<String, Session>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+			return size() > MAX_SESSIONS;
+		}
+
+	};
+
+	private final AtomicLong scheduled = new AtomicLong();
+	private final AtomicLong decoded = new AtomicLong();
+	/** Prefetches not scheduled because of the session budget or a full queue. */
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+
+	private static class Session {
+
+		private String video;
+		private int generation;
+		private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+	}
+
+	/**
+	 * Called when a session opens a video at the given frame.
+	 */
+	public void onVideoOpened(String sessionId, String video, int frameIndex) {
+		schedule(sessionId, FrameNames.checkDirectory(video), frameIndex);
+	}
+
+	/**
+	 * Called when a session requests tracking onto a frame, given by its path
+	 * relative to the videos directory; the frames after it are prefetched.
+	 */
+	public void onFrameRequested(String sessionId, String relativePath) {
+		int frameIndex = FrameNames.frameIndex(relativePath);
+		int slash = relativePath.indexOf('/');
+		if (frameIndex < 0 || slash <= 0) {
+			return;
+		}
+		schedule(sessionId, relativePath.substring(0, slash), frameIndex + 1);
+	}
+
+	private void schedule(String sessionId, String video, int fromIndex) {
+		Session session;
+		int generation;
+		synchronized (sessions) {
+			session = sessions.get(sessionId);
+			if (session == null) {
+				session = new Session();
+				sessions.put(sessionId, session);
+			}
+			if (!video.equals(session.video)) {
+				cancelled.addAndGet(session.pending.size());
+				session.pending.clear();
+				session.video = video;
+				session.generation++;
+			}
+			generation = session.generation;
+		}
+
+		for (int index = fromIndex; index < fromIndex + taggingConf.getPrefetchFrames(); index++) {
+			String path = taggingConf.getVideosDir() + FrameNames.relativePath(video, index);
+			if (frameCache.contains(path) || session.pending.contains(index)) {
+				continue;
+			}
+			if (session.pending.size() >= taggingConf.getPrefetchMaxPending()) {
+				skipped.incrementAndGet();
+				break;
+			}
+			if (!new File(path).exists()) {
+				break;
+			}
+			session.pending.add(index);
+			try {
+				prefetchExecutor.execute(prefetchTask(session, generation, index, path));
+				scheduled.incrementAndGet();
+			}
+			catch (RejectedExecutionException e) {
+				session.pending.remove(index);
+				skipped.incrementAndGet();
+				break;
+			}
+		}
+	}
+
+	private Runnable prefetchTask(Session session, int generation, int index, String path) {
+		return () -> {
+			try {
+				synchronized (sessions) {
+					if (session.generation != generation) {
+						return;
+					}
+				}
+				if (frameCache.prefetch(path)) {
+					decoded.incrementAndGet();
+				}
+			}
+			catch (Exception e) {
+				log.debug("Could not prefetch {}: {}", path, e.toString());
+			}
+			finally {
+				synchronized (sessions) {
+					if (session.generation == generation) {
+						session.pending.remove(index);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns prefetch counters, including how many prefetched frames were
+	 * used and how many were evicted unused.
+	 */
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("scheduled", scheduled.get());
+		stats.put("decoded", decoded.get());
+		stats.put("skipped", skipped.get());
+		stats.put("cancelled", cancelled.get());
+		stats.put("hits", frameCache.getPrefetchHits());
+		stats.put("wasted", frameCache.getPrefetchWasted());
+		return stats;
+	}
+
+}
@@ -0,0 +1,229 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+
+/**
+ * Reads frame dimensions and grayscale regions of frames without decoding
+ * more of the JPEG than needed.
+ */
+@Component
+public class FrameReader {
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private FrameCache frameCache;
+
+	@Autowired
+	private MetricsRegistry metrics;
+
+	@Autowired
+	private MatPool matPool;
+
+	/** Frame dimensions by video directory; every frame of a video has the same size. */
+	private final Map<String, ProbedDimension> dimensions = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the dimensions of a frame, probing the JPEG header of the first
+	 * frame read from each video directory. The probe is repeated once the
+	 * probed frame's file changes, as when the video's frames are replaced.
+	 */
+	public Dimension getDimensions(String path) throws IOException {
+		String videoDir = new File(path).getParent();
+		ProbedDimension probed = dimensions.get(videoDir);
+		if (probed == null || !probed.isCurrent()) {
+			BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+			probed = new ProbedDimension(path, attributes, probeDimensions(path));
+			dimensions.put(videoDir, probed);
+		}
+		return probed.dimension;
+	}
+
+	/** Reads the width and height from the image header only. */
+	public Dimension probeDimensions(String path) throws IOException {
+		ImageReader reader = jpegReader();
+		try (ImageInputStream in = ImageIO.createImageInputStream(new File(path))) {
+			if (in == null) {
+				throw new IOException("Unable to open frame " + path);
+			}
+			reader.setInput(in, true, true);
+			return new Dimension(reader.getWidth(0), reader.getHeight(0));
+		}
+		finally {
+			reader.dispose();
+		}
+	}
+
+	/**
+	 * Returns a pooled grayscale Mat holding the given region of a frame,
+	 * which the caller must release. The region is copied from the frame
+	 * cache when the frame is already decoded, decoded on its own when it is
+	 * small compared with the frame, and otherwise taken from a full decode
+	 * that is cached for the next request.
+	 */
+	public Mat readRegion(String path, Rect region, MatPool.Slot slot) throws IOException {
+		long start = System.nanoTime();
+		Mat copy = matPool.get(slot, region.height, region.width);
+		try {
+			Frame cached = frameCache.acquireIfPresent(path);
+			if (cached == null && isSmallRegion(path, region) && decodeRegion(path, region, copy)) {
+				metrics.histogram("tracking.decodeMicros").recordSince(start);
+				return copy;
+			}
+			try (Frame frame = cached != null ? cached : frameCache.acquire(path)) {
+				metrics.histogram("tracking.decodeMicros").recordSince(start);
+				long convertStart = System.nanoTime();
+				Mat submat = frame.getMat().submat(region);
+				submat.copyTo(copy);
+				submat.release();
+				metrics.histogram("tracking.submatMicros").recordSince(convertStart);
+				return copy;
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			copy.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of pixels above the box pixel threshold in a region
+	 * of a frame, or -1 if the frame is not decoded, so the region must be
+	 * read to know.
+	 */
+	public int countBrightPixels(String path, Rect region) {
+		try (Frame frame = frameCache.acquireIfPresent(path)) {
+			if (frame == null) {
+				return -1;
+			}
+			int count = frame.countBrightPixels(region);
+			metrics.histogram("tracking.brightPixels").record(count);
+			return count;
+		}
+	}
+
+	private boolean isSmallRegion(String path, Rect region) throws IOException {
+		Dimension dimension = getDimensions(path);
+		double frameArea = (double) dimension.width * dimension.height;
+		return region.area() <= frameArea * taggingConf.getRoiDecodeMaxFraction();
+	}
+
+	/**
+	 * Decodes only the given region of a JPEG into a Mat of its size. The
+	 * raster is read without color conversion, so band 0 is the luma channel
+	 * of grayscale and YCbCr images, which is what a grayscale decode yields.
+	 * Returns false for other color spaces, such as RGB or CMYK, so the
+	 * caller falls back to a full decode.
+	 */
+	private boolean decodeRegion(String path, Rect region, Mat into) throws IOException {
+		ImageReader reader = jpegReader();
+		try (ImageInputStream in = ImageIO.createImageInputStream(new File(path))) {
+			if (in == null) {
+				throw new IOException("Unable to open frame " + path);
+			}
+			reader.setInput(in, true, false);
+			String colorSpace = colorSpace(reader);
+			if (!"GRAY".equals(colorSpace) && !"YCbCr".equals(colorSpace)) {
+				return false;
+			}
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceRegion(new Rectangle(region.x, region.y, region.width, region.height));
+			Raster raster = reader.readRaster(0, param);
+			int width = raster.getWidth(), height = raster.getHeight();
+			int bands = "GRAY".equals(colorSpace) ? 1 : 3;
+			if (raster.getNumBands() != bands || width != into.cols() || height != into.rows()) {
+				return false;
+			}
+			int[] samples = raster.getSamples(raster.getMinX(), raster.getMinY(), width, height, 0, (int[]) null);
+			byte[] pixels = new byte[samples.length];
+			for (int i = 0; i < samples.length; i++) {
+				pixels[i] = (byte) samples[i];
+			}
+			into.put(0, 0, pixels);
+			return true;
+		}
+		finally {
+			reader.dispose();
+		}
+	}
+
+	/**
+	 * Returns the color space the JPEG reader infers from the image's JFIF,
+	 * Adobe and frame markers, or null if the metadata does not say.
+	 */
+	private static String colorSpace(ImageReader reader) throws IOException {
+		IIOMetadata metadata = reader.getImageMetadata(0);
+		if (metadata == null || !metadata.isStandardMetadataFormatSupported()) {
+			return null;
+		}
+		IIOMetadataNode tree = (IIOMetadataNode) metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+		IIOMetadataNode colorSpaceType = (IIOMetadataNode) tree.getElementsByTagName("ColorSpaceType").item(0);
+		return colorSpaceType != null ? colorSpaceType.getAttribute("name") : null;
+	}
+
+	/** The dimensions probed from a frame, with the size and modification time of its file. */
+	private static class ProbedDimension {
+
+		private final String path;
+
+		private final long fileSize;
+
+		private final long modifiedMillis;
+
+		private final Dimension dimension;
+
+		ProbedDimension(String path, BasicFileAttributes attributes, Dimension dimension) {
+			this.path = path;
+			this.fileSize = attributes.size();
+			this.modifiedMillis = attributes.lastModifiedTime().toMillis();
+			this.dimension = dimension;
+		}
+
+		/** Returns whether the probed frame's file is unchanged. */
+		boolean isCurrent() {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+				return attributes.size() == fileSize && attributes.lastModifiedTime().toMillis() == modifiedMillis;
+			}
+			catch (IOException e) {
+				return false;
+			}
+		}
+
+	}
+
+	private ImageReader jpegReader() {
+		Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+		if (!readers.hasNext()) {
+			throw new IllegalStateException("No JPEG reader available");
+		}
+		return readers.next();
+	}
+
+}
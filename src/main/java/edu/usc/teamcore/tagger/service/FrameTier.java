@@ -0,0 +1,47 @@
+package edu.usc.teamcore.tagger.service;
+
+/**
+ * The resolutions frames are served at. Smaller tiers are for playback and
+ * scrubbing; tagging and tracking always use the full frames.
+ */
+public enum FrameTier {
+
+	/** The original frame. */
+	FULL(1, false),
+
+	/** Half the width and height, in color. */
+	SMALL(0.5, false),
+
+	/** A quarter of the width and height, in grayscale. */
+	PREVIEW(0.25, true);
+
+	private final double scale;
+	private final boolean grayscale;
+
+	private FrameTier(double scale, boolean grayscale) {
+		this.scale = scale;
+		this.grayscale = grayscale;
+	}
+
+	public double getScale() {
+		return scale;
+	}
+
+	public boolean isGrayscale() {
+		return grayscale;
+	}
+
+	/** Returns the tier of the given name, in any case, or FULL if there is none. */
+	public static FrameTier parse(String name) {
+		if (name == null || name.isEmpty()) {
+			return FULL;
+		}
+		try {
+			return valueOf(name.toUpperCase());
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown frame tier " + name);
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.highgui.Highgui;
+import org.opencv.imgproc.Imgproc;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Downscaled variants of frames, generated on first request into
+ * {@code <outputDir>/variants/<tier>/<video>/} and evicted least recently
+ * used first once they exceed their disk budget. Eviction may delete a
+ * variant right after it was looked up, so readers go through
+ * {@link #read}, which generates it again.
+ */
+@Slf4j
+@Component
+public class FrameVariantCache {
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	private Path variantsDir;
+
+	/** Sizes of the variants on disk, in access order. */
+	private final LinkedHashMap<Path, Long> variants = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long sizeInBytes;
+
+	/**
+	 * Locks by variant path, so a variant is only generated once at a time.
+	 * They are kept for good, as a thread may still be waiting on one.
+	 */
+	private final Map<Path, Object> generateLocks = new ConcurrentHashMap<>();
+
+	/** Reads a variant file. */
+	public interface VariantReader<T> {
+
+		T read(Path variant) throws IOException;
+
+	}
+
+	@PostConstruct
+	public void init() throws IOException {
+		variantsDir = Paths.get(taggingConf.getOutputDir(), "variants");
+		Files.createDirectories(variantsDir);
+		try (Stream<Path> temps = Files.walk(variantsDir)) {
+			for (Path temp : temps.filter(FrameVariantCache::isTemp).collect(Collectors.toList())) {
+				Files.deleteIfExists(temp);
+			}
+		}
+		try (Stream<Path> files = Files.walk(variantsDir)) {
+			List<Path> existing = files.filter(path -> path.toString().endsWith(".jpg") && !isTemp(path))
+					.sorted(Comparator.comparing(path -> path.toFile().lastModified()))
+					.collect(Collectors.toList());
+			synchronized (variants) {
+				for (Path path : existing) {
+					long size = Files.size(path);
+					variants.put(path, size);
+					sizeInBytes += size;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the path of a frame at the given tier, generating the variant
+	 * if it is missing or older than the frame.
+	 */
+	public Path get(String video, int index, FrameTier tier) throws IOException {
+		FrameNames.checkDirectory(video);
+		Path original = Paths.get(taggingConf.getVideosDir(), FrameNames.relativePath(video, index));
+		if (!Files.exists(original)) {
+			throw new FrameNotFoundException("No frame " + index + " in " + video);
+		}
+		if (tier == FrameTier.FULL) {
+			return original;
+		}
+
+		Path variant = variantsDir.resolve(tier.name().toLowerCase()).resolve(video)
+				.resolve(FrameNames.frameName(video, index));
+		synchronized (generateLocks.computeIfAbsent(variant, path -> new Object())) {
+			synchronized (variants) {
+				if (variants.get(variant) != null && Files.exists(variant)
+						&& Files.getLastModifiedTime(variant).compareTo(Files.getLastModifiedTime(original)) >= 0) {
+					return variant;
+				}
+			}
+			generate(original, variant, tier);
+			return variant;
+		}
+	}
+
+	/**
+	 * Reads a frame at the given tier, looking it up again if the variant was
+	 * evicted before the reader opened it. Once opened, a file can be read
+	 * to the end even if it is deleted.
+	 */
+	public <T> T read(String video, int index, FrameTier tier, VariantReader<T> reader) throws IOException {
+		for (int attempt = 1;; attempt++) {
+			try {
+				return reader.read(get(video, index, tier));
+			}
+			catch (NoSuchFileException e) {
+				if (attempt == 3) {
+					throw e;
+				}
+				log.debug("Frame variant {} was evicted while being read, generating it again", e.getFile());
+			}
+		}
+	}
+
+	private static boolean isTemp(Path path) {
+		return path.getFileName().toString().contains(".tmp");
+	}
+
+	private void generate(Path original, Path variant, FrameTier tier) throws IOException {
+		OpenCv.load();
+		Mat frame = Highgui.imread(original.toString(),
+				tier.isGrayscale() ? Highgui.CV_LOAD_IMAGE_GRAYSCALE : Highgui.CV_LOAD_IMAGE_COLOR);
+		Mat scaled = new Mat();
+		try {
+			if (frame.empty()) {
+				throw new IOException("Unable to decode frame " + original);
+			}
+			Size size = new Size(Math.max(1, Math.round(frame.cols() * tier.getScale())),
+					Math.max(1, Math.round(frame.rows() * tier.getScale())));
+			Imgproc.resize(frame, scaled, size, 0, 0, Imgproc.INTER_AREA);
+
+			Files.createDirectories(variant.getParent());
+			// A temp file of its own, as the extension tells imwrite the format
+			Path temp = Files.createTempFile(variant.getParent(), variant.getFileName() + ".tmp", ".jpg");
+			try {
+				MatOfInt quality = new MatOfInt(Highgui.CV_IMWRITE_JPEG_QUALITY, taggingConf.getFrameVariantJpegQuality());
+				boolean written = Highgui.imwrite(temp.toString(), scaled, quality);
+				quality.release();
+				if (!written) {
+					throw new IOException("Unable to write frame variant " + variant);
+				}
+				Files.move(temp, variant, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				Files.deleteIfExists(temp);
+			}
+			add(variant, Files.size(variant));
+		}
+		finally {
+			frame.release();
+			scaled.release();
+		}
+	}
+
+	private void add(Path variant, long size) {
+		synchronized (variants) {
+			Long previous = variants.put(variant, size);
+			sizeInBytes += size - (previous == null ? 0 : previous);
+			Iterator<Map.Entry<Path, Long>> eldest = variants.entrySet().iterator();
+			while (sizeInBytes > taggingConf.getFrameVariantCacheMaxBytes() && eldest.hasNext()) {
+				Map.Entry<Path, Long> entry = eldest.next();
+				if (entry.getKey().equals(variant)) {
+					continue;
+				}
+				try {
+					Files.deleteIfExists(entry.getKey());
+				}
+				catch (IOException e) {
+					log.warn("Unable to evict frame variant {}: {}", entry.getKey(), e.toString());
+					continue;
+				}
+				eldest.remove();
+				sizeInBytes -= entry.getValue();
+			}
+		}
+	}
+
+	public long getSizeInBytes() {
+		synchronized (variants) {
+			return sizeInBytes;
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values in power of two buckets, so
+ * percentiles are accurate to within a factor of two. Timers are histograms
+ * of microseconds.
+ */
+public class Histogram {
+
+	private final AtomicLongArray buckets = new AtomicLongArray(64);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public void record(long value) {
+		value = Math.max(0, value);
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/** Records the microseconds elapsed since the given {@link System#nanoTime()}. */
+	public void recordSince(long startNanos) {
+		record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns an upper bound of the given quantile, from 0 to 1, or 0 if
+	 * nothing was recorded.
+	 */
+	public long getQuantile(double quantile) {
+		long total = 0;
+		long[] counts = new long[buckets.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0) {
+				// Bucket i holds values from 2^(i-1) up to 2^i - 1
+				return Math.min(getMax(), i == 0 ? 0 : (1L << i) - 1);
+			}
+		}
+		return 0;
+	}
+
+	/** Returns the count, sum, mean, max and main percentiles. */
+	public Map<String, Long> getSnapshot() {
+		Map<String, Long> snapshot = new LinkedHashMap<>();
+		long n = getCount();
+		snapshot.put("count", n);
+		snapshot.put("sum", getSum());
+		snapshot.put("mean", n == 0 ? 0 : getSum() / n);
+		snapshot.put("p50", getQuantile(0.5));
+		snapshot.put("p90", getQuantile(0.9));
+		snapshot.put("p99", getQuantile(0.99));
+		snapshot.put("max", getMax());
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,22 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a record waited too long for room in the queue of an option
+ * file's journal, as when the disk stalls; the save may be retried.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class JournalFullException extends RejectedExecutionException {
+
+	private static final long serialVersionUID = 1L;
+
+	public JournalFullException(Path path, long timeoutMillis) {
+		super("Journal of " + path + " stayed full for " + timeoutMillis + " ms");
+	}
+
+}
@@ -0,0 +1,105 @@
+package edu.usc.teamcore.tagger.service;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The labels an annotator has saved so far for one video, merged from the
+ * deltas sent since the draft was opened. Access is synchronized on the
+ * draft.
+ */
+public class LabelDraft {
+
+	private final String id;
+	private final String video;
+	private final String optionName;
+	/** The entry under review, or null when labeling. */
+	private final String entryTime;
+	private final String userAgent;
+
+	/** The boxes of every frame, keyed by frame. */
+	private final ObjectNode frames;
+
+	private int version;
+
+	/** The deltas logged since the last checkpoint. */
+	private int deltasSinceCheckpoint;
+
+	private long lastAccessMillis = System.currentTimeMillis();
+
+	LabelDraft(String id, String video, String optionName, String entryTime, String userAgent, ObjectNode frames,
+			int version) {
+		this.id = id;
+		this.video = video;
+		this.optionName = optionName;
+		this.entryTime = entryTime;
+		this.userAgent = userAgent;
+		this.frames = frames;
+		this.version = version;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getVideo() {
+		return video;
+	}
+
+	public String getOptionName() {
+		return optionName;
+	}
+
+	public String getEntryTime() {
+		return entryTime;
+	}
+
+	public String getUserAgent() {
+		return userAgent;
+	}
+
+	ObjectNode getFrames() {
+		return frames;
+	}
+
+	public synchronized int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Merges a delta of changed frames, where a null frame is one whose boxes
+	 * were all removed, and returns the new version.
+	 */
+	synchronized int apply(ObjectNode delta) {
+		merge(frames, delta);
+		return ++version;
+	}
+
+	/** Merges a delta of changed frames into the given frames. */
+	static void merge(ObjectNode frames, ObjectNode delta) {
+		delta.fields().forEachRemaining(frame -> {
+			if (frame.getValue().isNull()) {
+				frames.remove(frame.getKey());
+			}
+			else {
+				frames.set(frame.getKey(), frame.getValue());
+			}
+		});
+	}
+
+	int getDeltasSinceCheckpoint() {
+		return deltasSinceCheckpoint;
+	}
+
+	void setDeltasSinceCheckpoint(int deltasSinceCheckpoint) {
+		this.deltasSinceCheckpoint = deltasSinceCheckpoint;
+	}
+
+	long getLastAccessMillis() {
+		return lastAccessMillis;
+	}
+
+	void setLastAccessMillis(long lastAccessMillis) {
+		this.lastAccessMillis = lastAccessMillis;
+	}
+
+}
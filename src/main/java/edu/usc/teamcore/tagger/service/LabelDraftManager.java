@@ -0,0 +1,280 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the drafts annotators save deltas to. Each delta is appended to the
+ * draft's log, and every few deltas the full draft is written as a
+ * checkpoint and the log is started over, so drafts survive a restart while
+ * each save only writes what changed.
+ */
+@Slf4j
+@Component
+public class LabelDraftManager {
+
+	private static final String CHECKPOINT = ".checkpoint";
+	private static final String LOG = ".log";
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final Map<String, LabelDraft> drafts = new ConcurrentHashMap<>();
+
+	private Path draftsDir;
+
+	@PostConstruct
+	public void init() throws IOException {
+		draftsDir = Paths.get(taggingConf.getOutputDir(), "drafts");
+		Files.createDirectories(draftsDir);
+		try (DirectoryStream<Path> checkpoints = Files.newDirectoryStream(draftsDir, "*" + CHECKPOINT)) {
+			for (Path checkpoint : checkpoints) {
+				try {
+					LabelDraft draft = recover(checkpoint);
+					// Starts the log over, so new deltas never follow a torn line
+					writeCheckpoint(draft, draft.getFrames(), draft.getVersion());
+					drafts.put(draft.getId(), draft);
+				}
+				catch (IOException | RuntimeException e) {
+					log.warn("Unable to recover draft {}: {}", checkpoint, e.toString());
+				}
+			}
+		}
+		log.info("Recovered {} drafts", drafts.size());
+	}
+
+	/**
+	 * Opens a draft of a video with the given labels, which may be empty.
+	 */
+	public LabelDraft open(String video, String optionName, String entryTime, String userAgent, String data)
+			throws IOException {
+		FrameNames.checkDirectory(video);
+		purgeIdle();
+		LabelDraft draft = new LabelDraft(UUID.randomUUID().toString(), video, optionName, entryTime, userAgent,
+				parseFrames(data), 0);
+		synchronized (draft) {
+			writeCheckpoint(draft, draft.getFrames(), draft.getVersion());
+		}
+		drafts.put(draft.getId(), draft);
+		log.info("Opened draft {} of {} for {}", draft.getId(), video, optionName);
+		return draft;
+	}
+
+	/**
+	 * Returns a draft, or throws if there is none with that id.
+	 */
+	public LabelDraft get(String id) {
+		LabelDraft draft = drafts.get(id);
+		if (draft == null) {
+			throw new IllegalArgumentException("No draft " + id);
+		}
+		return draft;
+	}
+
+	/**
+	 * Logs the frames changed since the given version of a draft, then
+	 * merges them into it and returns the new version. A delta that fails
+	 * to be logged leaves the draft as it was.
+	 */
+	public int applyDelta(String id, int baseVersion, String delta) throws IOException {
+		LabelDraft draft = get(id);
+		ObjectNode frames = parseFrames(delta);
+		synchronized (draft) {
+			if (draft.getVersion() != baseVersion) {
+				throw new DraftConflictException(id, baseVersion, draft.getVersion());
+			}
+			int version = baseVersion + 1;
+			draft.setLastAccessMillis(System.currentTimeMillis());
+			if (draft.getDeltasSinceCheckpoint() + 1 >= taggingConf.getDraftCheckpointInterval()) {
+				ObjectNode merged = draft.getFrames().deepCopy();
+				LabelDraft.merge(merged, frames);
+				writeCheckpoint(draft, merged, version);
+			}
+			else {
+				appendDelta(draft, version, frames);
+			}
+			draft.apply(frames);
+			log.debug("Draft {} at version {}: {} frames changed", id, version, frames.size());
+			return version;
+		}
+	}
+
+	/**
+	 * Returns the merged labels of a draft, as the client sends them.
+	 */
+	public String getData(String id) throws IOException {
+		LabelDraft draft = get(id);
+		synchronized (draft) {
+			return mapper.writeValueAsString(draft.getFrames());
+		}
+	}
+
+	/**
+	 * Drops a draft and its files.
+	 */
+	public void discard(String id) throws IOException {
+		LabelDraft draft = drafts.remove(id);
+		if (draft != null) {
+			synchronized (draft) {
+				Files.deleteIfExists(draftsDir.resolve(id + LOG));
+				Files.deleteIfExists(draftsDir.resolve(id + CHECKPOINT));
+			}
+		}
+	}
+
+	private void purgeIdle() throws IOException {
+		long maxIdleMillis = TimeUnit.HOURS.toMillis(taggingConf.getDraftMaxIdleHours());
+		Iterator<LabelDraft> iterator = drafts.values().iterator();
+		while (iterator.hasNext()) {
+			LabelDraft draft = iterator.next();
+			if (System.currentTimeMillis() - draft.getLastAccessMillis() > maxIdleMillis) {
+				log.info("Discarding draft {} of {}, idle since {}", draft.getId(), draft.getVideo(),
+						new Date(draft.getLastAccessMillis()));
+				discard(draft.getId());
+			}
+		}
+	}
+
+	private ObjectNode parseFrames(String json) throws IOException {
+		JsonNode frames = json == null || json.trim().isEmpty() ? mapper.createObjectNode() : mapper.readTree(json);
+		if (frames == null || !frames.isObject()) {
+			throw new IllegalArgumentException("Labels must be an object of frames");
+		}
+		for (JsonNode boxes : frames) {
+			if (!boxes.isObject() && !boxes.isNull()) {
+				throw new IllegalArgumentException("The boxes of a frame must be an object or null");
+			}
+		}
+		return (ObjectNode) frames;
+	}
+
+	/**
+	 * Writes the draft with the given frames and version, replacing the
+	 * previous checkpoint, and clears the log.
+	 */
+	private void writeCheckpoint(LabelDraft draft, ObjectNode frames, int version) throws IOException {
+		ObjectNode checkpoint = mapper.createObjectNode();
+		checkpoint.put("id", draft.getId());
+		checkpoint.put("video", draft.getVideo());
+		checkpoint.put("optionName", draft.getOptionName());
+		checkpoint.put("entryTime", draft.getEntryTime());
+		checkpoint.put("userAgent", draft.getUserAgent());
+		checkpoint.put("version", version);
+		checkpoint.set("frames", frames);
+
+		Path path = draftsDir.resolve(draft.getId() + CHECKPOINT);
+		Path temp = draftsDir.resolve(draft.getId() + CHECKPOINT + ".tmp");
+		write(temp, mapper.writeValueAsBytes(checkpoint), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.deleteIfExists(draftsDir.resolve(draft.getId() + LOG));
+		draft.setDeltasSinceCheckpoint(0);
+	}
+
+	private void appendDelta(LabelDraft draft, int version, ObjectNode frames) throws IOException {
+		ObjectNode delta = mapper.createObjectNode();
+		delta.put("version", version);
+		delta.set("frames", frames);
+		byte[] line = (mapper.writeValueAsString(delta) + "\n").getBytes(StandardCharsets.UTF_8);
+		try {
+			write(draftsDir.resolve(draft.getId() + LOG), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		}
+		catch (IOException e) {
+			// Part of the line may be logged, so the next delta starts a new log from a checkpoint
+			draft.setDeltasSinceCheckpoint(taggingConf.getDraftCheckpointInterval());
+			throw e;
+		}
+		draft.setDeltasSinceCheckpoint(draft.getDeltasSinceCheckpoint() + 1);
+	}
+
+	private void write(Path path, byte[] bytes, StandardOpenOption... options) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, with(options, StandardOpenOption.WRITE))) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			if (taggingConf.getJournalForce()) {
+				channel.force(false);
+			}
+		}
+	}
+
+	private static Set<StandardOpenOption> with(StandardOpenOption[] options, StandardOpenOption option) {
+		Set<StandardOpenOption> all = EnumSet.copyOf(Arrays.asList(options));
+		all.add(option);
+		return all;
+	}
+
+	/**
+	 * Reads a checkpoint and replays the deltas logged after it, stopping at
+	 * a gap or a torn last line.
+	 */
+	private LabelDraft recover(Path checkpointPath) throws IOException {
+		JsonNode checkpoint = mapper.readTree(checkpointPath.toFile());
+		LabelDraft draft = new LabelDraft(checkpoint.path("id").asText(), checkpoint.path("video").asText(),
+				checkpoint.path("optionName").asText(), checkpoint.path("entryTime").textValue(),
+				checkpoint.path("userAgent").asText(), (ObjectNode) checkpoint.get("frames"),
+				checkpoint.path("version").asInt());
+		draft.setLastAccessMillis(Files.getLastModifiedTime(checkpointPath).toMillis());
+
+		Path logPath = draftsDir.resolve(draft.getId() + LOG);
+		if (Files.exists(logPath)) {
+			draft.setLastAccessMillis(Files.getLastModifiedTime(logPath).toMillis());
+			try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					JsonNode delta;
+					try {
+						delta = mapper.readTree(line);
+					}
+					catch (IOException e) {
+						break;
+					}
+					int version = delta.path("version").asInt();
+					if (version <= draft.getVersion()) {
+						continue;
+					}
+					if (version != draft.getVersion() + 1 || !delta.path("frames").isObject()) {
+						break;
+					}
+					draft.apply((ObjectNode) delta.get("frames"));
+					draft.setDeltasSinceCheckpoint(draft.getDeltasSinceCheckpoint() + 1);
+				}
+			}
+		}
+		return draft;
+	}
+
+}
@@ -0,0 +1,103 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-thread scratch Mats for tracking. Each thread keeps one buffer per
+ * slot, grown to the largest image it has needed, and hands out views of
+ * it, so steady tracking allocates no native pixel memory. Views span the
+ * top left of their buffer and are not continuous, so filters would read
+ * the stale pixels around them: pad views with {@code copyMakeBorder} and
+ * {@code BORDER_ISOLATED} first, as OpenCV 2.4 filters reject the flag.
+ */
+@Component
+public class MatPool {
+
+	/** What a scratch Mat holds, with the type of its pixels. */
+	public enum Slot {
+
+		/** The search region of the current frame. */
+		REGION(CvType.CV_8UC1),
+
+		/** The box in the previous frame. */
+		TEMPLATE(CvType.CV_8UC1),
+
+		/** A thresholded or filtered copy of the region. */
+		FILTERED(CvType.CV_8UC1),
+
+		/** The region with a border for filtering. */
+		PADDED(CvType.CV_8UC1),
+
+		/** Match scores. */
+		SCORES(CvType.CV_32FC1);
+
+		private final int type;
+
+		private Slot(int type) {
+			this.type = type;
+		}
+
+	}
+
+	/** The buffers of every thread, so they can be released on shutdown. */
+	private final Set<Mat[]> allBuffers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+	private final ThreadLocal<Mat[]> buffers = ThreadLocal.withInitial(() -> {
+		Mat[] threadBuffers = new Mat[Slot.values().length];
+		allBuffers.add(threadBuffers);
+		return threadBuffers;
+	});
+
+	private final AtomicLong sizeInBytes = new AtomicLong();
+
+	/**
+	 * Returns a view of the calling thread's buffer for the slot, with the
+	 * given size. The caller must release the view, which leaves the buffer
+	 * to the pool, and must not use the slot again until then.
+	 */
+	public Mat get(Slot slot, int rows, int cols) {
+		OpenCv.load();
+		Mat[] threadBuffers = buffers.get();
+		Mat buffer = threadBuffers[slot.ordinal()];
+		if (buffer == null || buffer.rows() < rows || buffer.cols() < cols) {
+			int bufferRows = buffer == null ? rows : Math.max(rows, buffer.rows());
+			int bufferCols = buffer == null ? cols : Math.max(cols, buffer.cols());
+			if (buffer != null) {
+				sizeInBytes.addAndGet(-buffer.total() * buffer.elemSize());
+				buffer.release();
+			}
+			buffer = new Mat(bufferRows, bufferCols, slot.type);
+			sizeInBytes.addAndGet(buffer.total() * buffer.elemSize());
+			threadBuffers[slot.ordinal()] = buffer;
+		}
+		return buffer.submat(0, rows, 0, cols);
+	}
+
+	/** The native size of the buffers of every thread, in bytes. */
+	public long getSizeInBytes() {
+		return sizeInBytes.get();
+	}
+
+	@PreDestroy
+	public void close() {
+		for (Mat[] threadBuffers : allBuffers) {
+			for (Mat buffer : threadBuffers) {
+				if (buffer != null) {
+					buffer.release();
+				}
+			}
+		}
+		allBuffers.clear();
+		sizeInBytes.set(0);
+	}
+
+}
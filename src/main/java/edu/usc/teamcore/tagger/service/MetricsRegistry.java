@@ -0,0 +1,49 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Named histograms and gauges of the hot paths. Timers are histograms
+ * named {@code ...Micros}; sizes are histograms named {@code ...Bytes}.
+ */
+@Component
+public class MetricsRegistry {
+
+	private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+	/** Returns the histogram of the given name, creating it if needed. */
+	public Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, n -> new Histogram());
+	}
+
+	/** Registers a histogram kept by another object under the given name. */
+	public void register(String name, Histogram histogram) {
+		histograms.put(name, histogram);
+	}
+
+	/** Registers a value read whenever the metrics are. */
+	public void gauge(String name, Supplier<? extends Number> value) {
+		gauges.put(name, value);
+	}
+
+	/** Returns the snapshots of the histograms and the values of the gauges, by name. */
+	public Map<String, Object> getSnapshot() {
+		Map<String, Object> histogramSnapshots = new TreeMap<>();
+		histograms.forEach((name, histogram) -> histogramSnapshots.put(name, histogram.getSnapshot()));
+		Map<String, Object> gaugeValues = new TreeMap<>();
+		gauges.forEach((name, value) -> gaugeValues.put(name, value.get()));
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("histograms", histogramSnapshots);
+		snapshot.put("gauges", gaugeValues);
+		return snapshot;
+	}
+
+}
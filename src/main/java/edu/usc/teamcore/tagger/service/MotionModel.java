@@ -0,0 +1,53 @@
+package edu.usc.teamcore.tagger.service;
+
+/**
+ * A constant velocity model of a box moving across frames, fed with the
+ * displacements the tracker finds for it. The velocity is smoothed over the
+ * track, so one noisy position does not throw the next search window off.
+ * A model follows one track and is not shared between threads.
+ */
+public class MotionModel {
+
+	/** How much of the latest displacement goes into the velocity. */
+	private static final double GAIN = 0.5;
+
+	private double velocityX;
+	private double velocityY;
+	private int observations;
+
+	/** Whether the box was seen moving, so its next position can be predicted. */
+	public boolean canPredict() {
+		return observations > 0;
+	}
+
+	/** The predicted horizontal displacement to the next frame, in pixels. */
+	public int getShiftX() {
+		return (int) Math.round(velocityX);
+	}
+
+	/** The predicted vertical displacement to the next frame, in pixels. */
+	public int getShiftY() {
+		return (int) Math.round(velocityY);
+	}
+
+	/** Records the displacement of the box from the previous frame. */
+	public void observe(int dx, int dy) {
+		if (observations == 0) {
+			velocityX = dx;
+			velocityY = dy;
+		}
+		else {
+			velocityX += GAIN * (dx - velocityX);
+			velocityY += GAIN * (dy - velocityY);
+		}
+		observations++;
+	}
+
+	/** Forgets the motion, after the box was lost. */
+	public void reset() {
+		velocityX = 0;
+		velocityY = 0;
+		observations = 0;
+	}
+
+}
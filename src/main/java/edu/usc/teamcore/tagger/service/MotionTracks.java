@@ -0,0 +1,59 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * The motion models of the boxes annotator sessions track frame by frame.
+ * Clients send the position tracked on one frame back as the bounds of the
+ * next request, so a track is found again by its session, frame and last
+ * position. Boxes that were moved by hand start a new track.
+ */
+@Component
+public class MotionTracks {
+
+	private static final int MAX_TRACKS = 4096;
+
+	/** Models by track key, dropping the least recently tracked. */
+	private final Map<String, MotionModel> tracks = new LinkedHashMap<String, MotionModel>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, MotionModel> eldest) {
+			return size() > MAX_TRACKS;
+		}
+
+	};
+
+	/**
+	 * Removes and returns the model of the track that was last at the given
+	 * bounds on the given frame, or a new model if there is none.
+	 */
+	public MotionModel take(String sessionId, String frame, String bounds) {
+		MotionModel model;
+		synchronized (tracks) {
+			model = tracks.remove(key(sessionId, frame, bounds));
+		}
+		return model == null ? new MotionModel() : model;
+	}
+
+	/** Keeps the model of a track that is now at the given position on the given frame. */
+	public void put(String sessionId, String frame, String position, MotionModel model) {
+		synchronized (tracks) {
+			tracks.put(key(sessionId, frame, position), model);
+		}
+	}
+
+	/** Normalizes "x,y,w,h" bounds and "[x, y, w, h]" positions to whole pixels. */
+	private static String key(String sessionId, String frame, String box) {
+		StringBuilder key = new StringBuilder(sessionId).append('|').append(frame);
+		for (String value : box.replaceAll("[\\[\\] ]", "").split(",")) {
+			key.append('|').append(Math.round(Double.parseDouble(value)));
+		}
+		return key.toString();
+	}
+
+}
@@ -0,0 +1,40 @@
+package edu.usc.teamcore.tagger.service;
+
+import org.opencv.core.Core;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads the OpenCV native library once per JVM.
+ */
+@Slf4j
+public final class OpenCv {
+
+	private static volatile boolean loaded;
+
+	private OpenCv() {
+	}
+
+	/**
+	 * Loads the native library from java.library.path, or else the one
+	 * bundled with the OpenCV jar. Only the first call does any work.
+	 */
+	public static void load() {
+		if (loaded) {
+			return;
+		}
+		synchronized (OpenCv.class) {
+			if (!loaded) {
+				try {
+					System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+				}
+				catch (UnsatisfiedLinkError e) {
+					log.info("{} is not on java.library.path, loading the bundled library", Core.NATIVE_LIBRARY_NAME);
+					nu.pattern.OpenCV.loadLibrary();
+				}
+				loaded = true;
+			}
+		}
+	}
+
+}
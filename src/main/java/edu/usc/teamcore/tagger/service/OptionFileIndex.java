@@ -0,0 +1,217 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.opencsv.CSVParser;
+
+/**
+ * In-memory index of an option CSV file, mapping each entry's video
+ * (column 0) and entry time (column 1) to the byte range of its record, so
+ * entries can be listed and read without scanning the file.
+ * <p>
+ * Records are only ever added, by one writer at a time, so readers take no
+ * lock: they see each record once it is fully indexed, and the length only
+ * ever covers indexed records.
+ */
+public class OptionFileIndex {
+
+	/** The byte range of a record in the file. */
+	public static class Entry {
+
+		private final long offset;
+		private final int length;
+
+		public Entry(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+	}
+
+	/**
+	 * The entry times of a video, in an array only ever appended to, and
+	 * grown by copying. Readers read the count before the array, so the
+	 * array they see holds at least as many times.
+	 */
+	private static class EntryTimes {
+
+		private volatile String[] times = new String[4];
+		private volatile int count;
+
+		/** Appends a time. Writers are serialized by the index. */
+		private void add(String time) {
+			String[] current = times;
+			if (count == current.length) {
+				current = Arrays.copyOf(current, current.length * 2);
+				times = current;
+			}
+			current[count] = time;
+			count = count + 1;
+		}
+
+		private List<String> list() {
+			int published = count;
+			return new ArrayList<>(Arrays.asList(times).subList(0, published));
+		}
+
+	}
+
+	/** Entry times by video, in file order, including repeated entries. */
+	private final Map<String, EntryTimes> entryTimes = new ConcurrentHashMap<>();
+
+	/** The videos having entries, in order of their first entry. */
+	private final List<String> fileNames = new CopyOnWriteArrayList<>();
+
+	/** The first record of each video and entry time. */
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/** The length of the file covered by the index. */
+	private volatile long length;
+
+	/**
+	 * Builds the index of an existing file, or an empty index if it does not
+	 * exist. Records end at a newline outside quotes.
+	 */
+	public static OptionFileIndex build(Path file) throws IOException {
+		OptionFileIndex index = new OptionFileIndex();
+		if (!Files.exists(file)) {
+			return index;
+		}
+		CSVParser parser = newParser();
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			boolean quoted = false;
+			long offset = 0, position = 0;
+			int b;
+			while ((b = in.read()) != -1) {
+				position++;
+				record.write(b);
+				if (b == '"') {
+					quoted = !quoted;
+				}
+				else if (b == '\n' && !quoted) {
+					index.addRecord(parser, record.toByteArray(), offset);
+					record.reset();
+					offset = position;
+				}
+			}
+			if (record.size() > 0) {
+				index.addRecord(parser, record.toByteArray(), offset);
+			}
+			index.length = position;
+		}
+		return index;
+	}
+
+	private void addRecord(CSVParser parser, byte[] record, long offset) throws IOException {
+		String[] values = parse(parser, record);
+		if (values.length >= 2) {
+			add(values[0], values[1], offset, record.length);
+		}
+		else {
+			length = offset + record.length;
+		}
+	}
+
+	/**
+	 * Indexes a record appended at the given offset. Writers are serialized
+	 * among themselves only.
+	 */
+	public synchronized void add(String fileName, String entryTime, long offset, int recordLength) {
+		entries.putIfAbsent(key(fileName, entryTime), new Entry(offset, recordLength));
+		EntryTimes times = entryTimes.get(fileName);
+		if (times == null) {
+			times = new EntryTimes();
+			times.add(entryTime);
+			entryTimes.put(fileName, times);
+			fileNames.add(fileName);
+		}
+		else {
+			times.add(entryTime);
+		}
+		length = Math.max(length, offset + recordLength);
+	}
+
+	/** Returns the entry times of a video, in file order. */
+	public List<String> list(String fileName) {
+		EntryTimes times = entryTimes.get(fileName);
+		return times == null ? Collections.emptyList() : times.list();
+	}
+
+	/** Returns the first record of a video and entry time, or null. */
+	public Entry find(String fileName, String entryTime) {
+		return entries.get(key(fileName, entryTime));
+	}
+
+	/** Returns the videos having entries, in order of their first entry. */
+	public Set<String> fileNames() {
+		return Collections.unmodifiableSet(new LinkedHashSet<>(fileNames));
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Reads and parses the record at the given entry with a positioned read.
+	 */
+	public static String[] read(FileChannel channel, Entry entry) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(entry.getLength());
+		long position = entry.getOffset();
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of file at " + position);
+			}
+			position += read;
+		}
+		return parse(newParser(), buffer.array());
+	}
+
+	/**
+	 * Returns a parser matching CSVWriter's defaults, which double quotes
+	 * instead of escaping them, so backslashes in the JSON are kept.
+	 */
+	private static CSVParser newParser() {
+		return new CSVParser(CSVParser.DEFAULT_SEPARATOR, CSVParser.DEFAULT_QUOTE_CHARACTER, CSVParser.NULL_CHARACTER);
+	}
+
+	/** Parses a record, without its line terminator. */
+	private static String[] parse(CSVParser parser, byte[] record) throws IOException {
+		int end = record.length;
+		while (end > 0 && (record[end - 1] == '\n' || record[end - 1] == '\r')) {
+			end--;
+		}
+		return parser.parseLine(new String(record, 0, end, StandardCharsets.UTF_8));
+	}
+
+	private static String key(String fileName, String entryTime) {
+		return fileName + '\u0000' + entryTime;
+	}
+
+}
@@ -0,0 +1,255 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Appends records to an option file from a single writer thread. Records
+ * queued while a batch is being written are written together as the next
+ * batch, with one force per batch, and each record's future completes once
+ * its batch is durable. The records are indexed only then, so readers never
+ * see an entry that could still be lost. A batch that fails is truncated
+ * away, so no torn record is left for the next batch to follow; if even
+ * that fails, the journal fails every later record.
+ */
+@Slf4j
+public class OptionFileJournal implements AutoCloseable {
+
+	private static class PendingRecord {
+
+		private final String fileName;
+		private final String entryTime;
+		private final byte[] bytes;
+		private final CompletableFuture<Void> durable = new CompletableFuture<>();
+		private final long queuedNanos = System.nanoTime();
+
+		private PendingRecord(String fileName, String entryTime, byte[] bytes) {
+			this.fileName = fileName;
+			this.entryTime = entryTime;
+			this.bytes = bytes;
+		}
+
+	}
+
+	/** Marks the end of the queue. */
+	private static final PendingRecord CLOSE = new PendingRecord(null, null, null);
+
+	private final Path path;
+	private final OptionFileIndex index;
+	private final FileChannel channel;
+	private final BlockingQueue<PendingRecord> queue;
+	private final int maxBatch;
+	private final boolean force;
+	private final long queueTimeoutMillis;
+	private final Thread writer;
+
+	private volatile boolean closed;
+
+	/** Why the file can no longer be appended to, if it can't. */
+	private volatile IOException failure;
+
+	private long batches;
+	private long records;
+
+	/** How long appends waited for room in the queue. */
+	private final Histogram queueWait = new Histogram();
+
+	/** How long records took from being queued to being durable. */
+	private final Histogram appendLatency = new Histogram();
+
+	/** How long each batch took to write and force. */
+	private final Histogram batchWrite = new Histogram();
+
+	/** The bytes written by each batch. */
+	private final Histogram batchBytes = new Histogram();
+
+	public OptionFileJournal(Path path, int queueCapacity, int maxBatch, boolean force, long queueTimeoutMillis)
+			throws IOException {
+		this(path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE), queueCapacity, maxBatch,
+				force, queueTimeoutMillis);
+	}
+
+	/** Appends through the given channel, open for writing on the path. */
+	OptionFileJournal(Path path, FileChannel channel, int queueCapacity, int maxBatch, boolean force,
+			long queueTimeoutMillis) throws IOException {
+		this.path = path;
+		this.index = OptionFileIndex.build(path);
+		this.channel = channel;
+		this.queue = new LinkedBlockingQueue<>(queueCapacity);
+		this.maxBatch = maxBatch;
+		this.force = force;
+		this.queueTimeoutMillis = queueTimeoutMillis;
+		this.writer = new Thread(this::run, "journal-" + path.getFileName());
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	public OptionFileIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Queues a record, waiting a bounded time for room in the queue, and
+	 * returns a future completed once the record is durable. The future
+	 * fails with a {@link JournalFullException} if the queue stays full, so
+	 * a stalled disk does not hold the saving threads.
+	 */
+	public CompletableFuture<Void> append(String fileName, String entryTime, byte[] bytes) throws InterruptedException {
+		if (closed) {
+			throw new IllegalStateException("Journal of " + path + " is closed");
+		}
+		PendingRecord record = new PendingRecord(fileName, entryTime, bytes);
+		if (failure != null) {
+			record.durable.completeExceptionally(failure);
+			return record.durable;
+		}
+		if (queue.offer(record)) {
+			queueWait.record(0);
+		}
+		else {
+			boolean queued = queue.offer(record, queueTimeoutMillis, TimeUnit.MILLISECONDS);
+			queueWait.recordSince(record.queuedNanos);
+			if (!queued) {
+				record.durable.completeExceptionally(new JournalFullException(path, queueTimeoutMillis));
+			}
+		}
+		return record.durable;
+	}
+
+	private void run() {
+		List<PendingRecord> batch = new ArrayList<>(maxBatch);
+		boolean running = true;
+		while (running) {
+			try {
+				batch.add(queue.take());
+				queue.drainTo(batch, maxBatch - 1);
+			}
+			catch (InterruptedException e) {
+				running = false;
+			}
+			if (batch.remove(CLOSE)) {
+				queue.drainTo(batch);
+				batch.remove(CLOSE);
+				running = false;
+			}
+			if (!batch.isEmpty()) {
+				write(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	private void write(List<PendingRecord> batch) {
+		if (failure != null) {
+			batch.forEach(record -> record.durable.completeExceptionally(failure));
+			return;
+		}
+		long start = System.nanoTime();
+		long offset;
+		try {
+			offset = channel.size();
+		}
+		catch (IOException e) {
+			log.error("Unable to write {} records to {}", batch.size(), path, e);
+			batch.forEach(record -> record.durable.completeExceptionally(e));
+			return;
+		}
+		try {
+			long position = offset;
+			for (PendingRecord record : batch) {
+				ByteBuffer buffer = ByteBuffer.wrap(record.bytes);
+				while (buffer.hasRemaining()) {
+					position += channel.write(buffer, position);
+				}
+			}
+			if (force) {
+				channel.force(false);
+			}
+			batchWrite.recordSince(start);
+			batchBytes.record(position - offset);
+			long recordOffset = offset;
+			for (PendingRecord record : batch) {
+				index.add(record.fileName, record.entryTime, recordOffset, record.bytes.length);
+				recordOffset += record.bytes.length;
+			}
+			synchronized (this) {
+				batches++;
+				records += batch.size();
+			}
+		}
+		catch (IOException e) {
+			log.error("Unable to write {} records to {}", batch.size(), path, e);
+			try {
+				// Drop whatever part of the batch made it, so it is neither indexed later nor retried twice
+				channel.truncate(offset);
+			}
+			catch (IOException truncateError) {
+				log.error("Unable to truncate {} back to {} bytes, failing later records", path, offset, truncateError);
+				failure = new IOException("Journal of " + path + " failed", truncateError);
+			}
+			batch.forEach(record -> record.durable.completeExceptionally(e));
+			return;
+		}
+		for (PendingRecord record : batch) {
+			appendLatency.recordSince(record.queuedNanos);
+			record.durable.complete(null);
+		}
+	}
+
+	/** Returns the number of batches written. */
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	/** Returns the number of records written. */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	public Histogram getQueueWait() {
+		return queueWait;
+	}
+
+	public Histogram getAppendLatency() {
+		return appendLatency;
+	}
+
+	public Histogram getBatchWrite() {
+		return batchWrite;
+	}
+
+	public Histogram getBatchBytes() {
+		return batchBytes;
+	}
+
+	/**
+	 * Writes the records already queued, then stops the writer and closes the
+	 * file.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		try {
+			queue.put(CLOSE);
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.opencsv.CSVWriter;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.config.TaggingConfig.Option;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Appends entries to the option CSV files through a journal per file and
+ * reads them back through the journal's index, so listing and fetching
+ * entries does not depend on the size of the file. Readers take no locks:
+ * they see the index as of the last durable record and read records with
+ * positioned reads, so they neither wait for saves nor for each other.
+ */
+@Slf4j
+@Component
+public class OptionFileStore {
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private MetricsRegistry metrics;
+
+	/** Journals by absolute file path. */
+	private final Map<String, OptionFileJournal> journals = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() throws IOException {
+		for (Option option : taggingConf.getOptions()) {
+			for (String file : new String[] { option.getInputFile(), option.getOutputFile() }) {
+				if (file != null) {
+					journalFor(taggingConf.getOutputDir() + file);
+				}
+			}
+		}
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		synchronized (journals) {
+			for (OptionFileJournal journal : journals.values()) {
+				journal.close();
+			}
+			journals.clear();
+		}
+	}
+
+	private OptionFileJournal journalFor(String file) throws IOException {
+		OptionFileJournal journal = journals.get(file);
+		if (journal == null) {
+			synchronized (journals) {
+				journal = journals.get(file);
+				if (journal == null) {
+					long start = System.currentTimeMillis();
+					journal = new OptionFileJournal(Paths.get(file), taggingConf.getJournalQueueCapacity(),
+							taggingConf.getJournalMaxBatch(), taggingConf.getJournalForce(), taggingConf.getSaveTimeoutMillis());
+					journals.put(file, journal);
+					String name = "option." + Paths.get(file).getFileName();
+					metrics.register(name + ".queueWaitMicros", journal.getQueueWait());
+					metrics.register(name + ".appendMicros", journal.getAppendLatency());
+					metrics.register(name + ".batchWriteMicros", journal.getBatchWrite());
+					metrics.register(name + ".batchBytes", journal.getBatchBytes());
+					log.info("Indexed {} ({} bytes) in {} ms", file, journal.getIndex().getLength(),
+							System.currentTimeMillis() - start);
+				}
+			}
+		}
+		return journal;
+	}
+
+	/**
+	 * Queues a record whose first two values are the video and the entry
+	 * time, and returns a future completed once it is durable and indexed.
+	 */
+	public CompletableFuture<Void> append(String file, String[] values) throws IOException, InterruptedException {
+		StringWriter record = new StringWriter();
+		try (CSVWriter writer = new CSVWriter(record)) {
+			writer.writeNext(values);
+		}
+		byte[] bytes = record.toString().getBytes(StandardCharsets.UTF_8);
+		return journalFor(file).append(values[0], values[1], bytes);
+	}
+
+	/**
+	 * Returns the entry times of a video, in file order.
+	 */
+	public List<String> list(String file, String fileName) throws IOException {
+		return journalFor(file).getIndex().list(fileName);
+	}
+
+	/**
+	 * Returns the videos having entries in a file.
+	 */
+	public Set<String> fileNames(String file) throws IOException {
+		return journalFor(file).getIndex().fileNames();
+	}
+
+	/**
+	 * Returns the length of a file up to its last durable record.
+	 */
+	public long getLength(String file) throws IOException {
+		return journalFor(file).getIndex().getLength();
+	}
+
+	/**
+	 * Returns the first record of a video at an entry time, or null if there
+	 * is none.
+	 */
+	public String[] read(String file, String fileName, String entryTime) throws IOException {
+		OptionFileJournal journal = journalFor(file);
+		OptionFileIndex.Entry entry = journal.getIndex().find(fileName, entryTime);
+		if (entry == null) {
+			return null;
+		}
+		// A channel of its own, as an interrupted read would close the journal's
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			return OptionFileIndex.read(channel, entry);
+		}
+	}
+
+	/**
+	 * Returns the number of batches and records written to each file.
+	 */
+	public Map<String, Map<String, Long>> getStats() {
+		Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+		journals.forEach((file, journal) -> {
+			Map<String, Long> fileStats = new LinkedHashMap<>();
+			fileStats.put("batches", journal.getBatches());
+			fileStats.put("records", journal.getRecords());
+			stats.put(Paths.get(file).getFileName().toString(), fileStats);
+		});
+		return stats;
+	}
+
+}
@@ -0,0 +1,37 @@
+package edu.usc.teamcore.tagger.service;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copies single-channel 8-bit Mats into reusable per-thread {@code byte[]}
+ * buffers with one bulk JNI transfer, instead of one {@code Mat.get} per pixel.
+ */
+@Component
+public class PixelTransferManager {
+
+	private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[0]);
+
+	/**
+	 * Returns the pixels of the given Mat in row-major order. The returned
+	 * buffer belongs to the calling thread and is overwritten by its next
+	 * call; it may be longer than {@code rows * cols}.
+	 */
+	public byte[] toBytes(Mat img) {
+		if (img.type() != CvType.CV_8UC1) {
+			throw new IllegalArgumentException("Expected a CV_8UC1 image but got " + CvType.typeToString(img.type()));
+		}
+		int size = img.rows() * img.cols();
+		byte[] buffer = buffers.get();
+		if (buffer.length < size) {
+			buffer = new byte[size];
+			buffers.set(buffer);
+		}
+		if (size > 0) {
+			img.get(0, 0, buffer);
+		}
+		return buffer;
+	}
+
+}
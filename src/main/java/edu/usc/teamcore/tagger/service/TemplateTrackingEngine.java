@@ -0,0 +1,70 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Core.MinMaxLocResult;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.service.MatPool.Slot;
+
+/**
+ * Matches the box's pixels in the previous frame against the search region
+ * by normalized correlation. Follows objects that are not the brightest in
+ * their neighborhood, at the cost of reading both frames.
+ */
+@Component
+public class TemplateTrackingEngine implements TrackingEngine {
+
+	public static final String NAME = "template";
+
+	/** The lowest correlation, from -1 to 1, taken as a match. */
+	private static final double MIN_SCORE = 0.5;
+
+	@Autowired
+	private FrameReader frameReader;
+
+	@Autowired
+	private MatPool matPool;
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public List<Integer> track(String prevFile, String currFile, Rect box, Rect searchRegion) throws IOException {
+		if (box.width > searchRegion.width || box.height > searchRegion.height) {
+			return null;
+		}
+		Mat template = frameReader.readRegion(prevFile, box, Slot.TEMPLATE);
+		Mat region = null, scores = null;
+		try {
+			region = frameReader.readRegion(currFile, searchRegion, Slot.REGION);
+			scores = matPool.get(Slot.SCORES, region.rows() - template.rows() + 1, region.cols() - template.cols() + 1);
+			Imgproc.matchTemplate(region, template, scores, Imgproc.TM_CCOEFF_NORMED);
+			MinMaxLocResult best = Core.minMaxLoc(scores);
+			// A flat template correlates with nothing, and scores NaN
+			if (!(best.maxVal >= MIN_SCORE)) {
+				return null;
+			}
+			return Arrays.asList((int) best.maxLoc.x + template.cols() / 2, (int) best.maxLoc.y + template.rows() / 2);
+		}
+		finally {
+			template.release();
+			if (region != null) {
+				region.release();
+			}
+			if (scores != null) {
+				scores.release();
+			}
+		}
+	}
+
+}
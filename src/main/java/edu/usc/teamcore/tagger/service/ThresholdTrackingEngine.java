@@ -0,0 +1,100 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.service.MatPool.Slot;
+
+/**
+ * Thresholds the search region and takes the midpoint of its largest
+ * connected component of bright pixels. Only the current frame is read,
+ * and not even that when the bright pixel counts of a decoded frame show
+ * the region holds no component or is a single one. Regions of frames that
+ * are not cached are counted once thresholded, before labeling.
+ */
+@Component
+public class ThresholdTrackingEngine implements TrackingEngine {
+
+	public static final String NAME = "threshold-cca";
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private FrameReader frameReader;
+
+	@Autowired
+	private PixelTransferManager pixelTransferMgr;
+
+	@Autowired
+	private ConnectedComponentManager connectedComponentMgr;
+
+	@Autowired
+	private MatPool matPool;
+
+	@Autowired
+	private MetricsRegistry metrics;
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public List<Integer> track(String prevFile, String currFile, Rect box, Rect searchRegion) throws IOException {
+		// Regions too dark to hold a component, or entirely bright, need no labeling
+		int brightPixels = frameReader.countBrightPixels(currFile, searchRegion);
+		if (brightPixels >= 0 && brightPixels < ConnectedComponentManager.MIN_COMPONENT_AREA) {
+			return null;
+		}
+		if (brightPixels == searchRegion.area()) {
+			return center(searchRegion);
+		}
+
+		Mat region = frameReader.readRegion(currFile, searchRegion, Slot.REGION);
+		Mat thresholded = matPool.get(Slot.FILTERED, region.rows(), region.cols());
+		try {
+			long thresholdStart = System.nanoTime();
+			Imgproc.threshold(region, thresholded, taggingConf.getBoxPixelThreshold(), 255, Imgproc.THRESH_BINARY);
+			metrics.histogram("tracking.thresholdMicros").recordSince(thresholdStart);
+			if (brightPixels < 0) {
+				brightPixels = Core.countNonZero(thresholded);
+				if (brightPixels < ConnectedComponentManager.MIN_COMPONENT_AREA) {
+					return null;
+				}
+				if (brightPixels == searchRegion.area()) {
+					return center(searchRegion);
+				}
+			}
+
+			long transferStart = System.nanoTime();
+			byte[] pixels = pixelTransferMgr.toBytes(thresholded);
+			metrics.histogram("tracking.transferMicros").recordSince(transferStart);
+
+			long labelStart = System.nanoTime();
+			List<Integer> midpoint = connectedComponentMgr.findConnectedComponent(pixels, thresholded.cols(),
+					thresholded.rows());
+			metrics.histogram("tracking.labelingMicros").recordSince(labelStart);
+			return midpoint;
+		}
+		finally {
+			region.release();
+			thresholded.release();
+		}
+	}
+
+	/** The midpoint of an entirely bright region, which is a single component. */
+	private static List<Integer> center(Rect searchRegion) {
+		return Arrays.asList((searchRegion.width - 1) / 2, (searchRegion.height - 1) / 2);
+	}
+
+}
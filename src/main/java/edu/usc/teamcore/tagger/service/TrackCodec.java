@@ -0,0 +1,348 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Converts label payloads between the frame map the client sends, with the
+ * boxes of every frame keyed by "x,y,w,h", and a compact track format for
+ * storage. Each track is a label, a start frame and a list of box keys with
+ * the number of consecutive frames each was unchanged for:
+ *
+ * <pre>
+ * {"format":"tracks","version":1,
+ *  "frames":{"prefix":"","suffix":"","digits":0},
+ *  "tracks":[{"label":"poacher","start":33,"boxes":[["172,148.5,60,74",20],["175,150,60,74",1]]}],
+ *  "empty":[12]}
+ * </pre>
+ *
+ * Frame keys are rebuilt from the prefix, the frame number, zero-padded to
+ * the given number of digits if not 0, and the suffix. Frames without boxes
+ * are kept in "empty".
+ */
+@Component
+public class TrackCodec {
+
+	public static final String FORMAT = "tracks";
+
+	private static final int VERSION = 1;
+
+	/** A frame key, split around its last run of digits. */
+	private static final Pattern FRAME_KEY = Pattern.compile("(.*?)(\\d+)(\\D*)");
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	/** Receives the boxes of a payload, one at a time. */
+	public interface BoxVisitor {
+
+		void visit(String frame, String box, String label) throws IOException;
+
+	}
+
+	private static class Track {
+
+		private final String label;
+		private final int start;
+		private final List<String> keys = new ArrayList<>();
+		private final List<Integer> runs = new ArrayList<>();
+		private int last;
+
+		private Track(String label, int start, String key) {
+			this.label = label;
+			this.start = start;
+			this.last = start;
+			keys.add(key);
+			runs.add(1);
+		}
+
+		private String lastKey() {
+			return keys.get(keys.size() - 1);
+		}
+
+		private void extend(int frame, String key) {
+			if (key.equals(lastKey())) {
+				runs.set(runs.size() - 1, runs.get(runs.size() - 1) + 1);
+			}
+			else {
+				keys.add(key);
+				runs.add(1);
+			}
+			last = frame;
+		}
+
+	}
+
+	/**
+	 * Encodes a frame map payload as tracks. Payloads that are not a JSON frame map
+	 * with consistently numbered frame keys, or are already encoded, are
+	 * returned unchanged.
+	 */
+	public String encode(String json) throws IOException {
+		JsonNode payload;
+		try {
+			payload = mapper.readTree(json);
+		}
+		catch (JsonProcessingException e) {
+			return json;
+		}
+		if (payload == null || !payload.isObject() || payload.has("format")) {
+			return json;
+		}
+
+		String prefix = "", suffix = "";
+		int digits = 0;
+		Map<Integer, JsonNode> frames = new TreeMap<>();
+		Iterator<Map.Entry<String, JsonNode>> fields = payload.fields();
+		while (fields.hasNext()) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			Matcher matcher = FRAME_KEY.matcher(field.getKey());
+			if (!matcher.matches() || !field.getValue().isObject() || matcher.group(2).replaceFirst("^0+", "").length() > 9) {
+				return json;
+			}
+			for (JsonNode label : field.getValue()) {
+				if (!label.isTextual()) {
+					return json;
+				}
+			}
+			if (frames.isEmpty()) {
+				prefix = matcher.group(1);
+				suffix = matcher.group(3);
+			}
+			if (matcher.group(2).startsWith("0") && matcher.group(2).length() > 1) {
+				digits = matcher.group(2).length();
+			}
+			frames.put(Integer.parseInt(matcher.group(2)), field.getValue());
+		}
+		// Only encode if every frame number renders back to its own key
+		if (frames.size() != payload.size()) {
+			return json;
+		}
+		for (int frame : frames.keySet()) {
+			if (!payload.has(frameKey(prefix, frame, digits, suffix))) {
+				return json;
+			}
+		}
+
+		List<Track> tracks = new ArrayList<>();
+		ArrayNode empty = mapper.createArrayNode();
+		List<Track> active = new ArrayList<>();
+		for (Map.Entry<Integer, JsonNode> entry : frames.entrySet()) {
+			int frame = entry.getKey();
+			if (entry.getValue().size() == 0) {
+				empty.add(frame);
+			}
+			active.removeIf(track -> track.last != frame - 1);
+			List<Track> continued = new ArrayList<>();
+			List<String> unmatched = new ArrayList<>();
+
+			// Boxes that did not move continue their track first
+			Iterator<Map.Entry<String, JsonNode>> boxes = entry.getValue().fields();
+			while (boxes.hasNext()) {
+				Map.Entry<String, JsonNode> box = boxes.next();
+				Track same = null;
+				for (Track track : active) {
+					if (track.lastKey().equals(box.getKey()) && track.label.equals(box.getValue().asText())) {
+						same = track;
+						break;
+					}
+				}
+				if (same != null) {
+					same.extend(frame, box.getKey());
+					active.remove(same);
+					continued.add(same);
+				}
+				else {
+					unmatched.add(box.getKey());
+				}
+			}
+			// Moved boxes continue the nearest track of their label
+			for (String key : unmatched) {
+				String label = entry.getValue().get(key).asText();
+				Track nearest = null;
+				double nearestDistance = Double.MAX_VALUE;
+				for (Track track : active) {
+					double distance = distance(track.lastKey(), key);
+					if (track.label.equals(label) && distance < nearestDistance) {
+						nearest = track;
+						nearestDistance = distance;
+					}
+				}
+				if (nearest != null) {
+					nearest.extend(frame, key);
+					active.remove(nearest);
+				}
+				else {
+					nearest = new Track(label, frame, key);
+					tracks.add(nearest);
+				}
+				continued.add(nearest);
+			}
+			active = continued;
+		}
+
+		ObjectNode encoded = mapper.createObjectNode();
+		encoded.put("format", FORMAT);
+		encoded.put("version", VERSION);
+		ObjectNode frameKeys = encoded.putObject("frames");
+		frameKeys.put("prefix", prefix);
+		frameKeys.put("suffix", suffix);
+		frameKeys.put("digits", digits);
+		ArrayNode trackNodes = encoded.putArray("tracks");
+		for (Track track : tracks) {
+			ObjectNode trackNode = trackNodes.addObject();
+			trackNode.put("label", track.label);
+			trackNode.put("start", track.start);
+			ArrayNode boxes = trackNode.putArray("boxes");
+			for (int i = 0; i < track.keys.size(); i++) {
+				boxes.addArray().add(track.keys.get(i)).add(track.runs.get(i));
+			}
+		}
+		encoded.set("empty", empty);
+		return mapper.writeValueAsString(encoded);
+	}
+
+	/**
+	 * Decodes a track payload back into the frame map the client uses.
+	 * Payloads not in the track format are returned unchanged.
+	 */
+	public String decode(String json) throws IOException {
+		JsonNode encoded;
+		try {
+			encoded = mapper.readTree(json);
+		}
+		catch (JsonProcessingException e) {
+			return json;
+		}
+		if (encoded == null || !FORMAT.equals(encoded.path("format").asText())) {
+			return json;
+		}
+		if (encoded.path("version").asInt() != VERSION) {
+			throw new IllegalArgumentException("Unsupported track format version " + encoded.path("version"));
+		}
+		JsonNode frameKeys = encoded.path("frames");
+		String prefix = frameKeys.path("prefix").asText();
+		String suffix = frameKeys.path("suffix").asText();
+		int digits = frameKeys.path("digits").asInt();
+
+		Map<Integer, ObjectNode> frames = new TreeMap<>();
+		for (JsonNode frame : encoded.path("empty")) {
+			frames.put(frame.asInt(), mapper.createObjectNode());
+		}
+		for (JsonNode track : encoded.path("tracks")) {
+			String label = track.path("label").asText();
+			int frame = track.path("start").asInt();
+			for (JsonNode box : track.path("boxes")) {
+				String key = box.get(0).asText();
+				for (int run = box.get(1).asInt(); run > 0; run--, frame++) {
+					frames.computeIfAbsent(frame, f -> mapper.createObjectNode()).put(key, label);
+				}
+			}
+		}
+
+		ObjectNode payload = mapper.createObjectNode();
+		frames.forEach((frame, boxes) -> payload.set(frameKey(prefix, frame, digits, suffix), boxes));
+		return mapper.writeValueAsString(payload);
+	}
+
+	/**
+	 * Visits every box of a payload in either format without building the
+	 * frame map. Frame maps are read token by token; tracks are expanded run
+	 * by run, so their boxes are visited track by track rather than in frame
+	 * order.
+	 */
+	public void forEachBox(String json, BoxVisitor visitor) throws IOException {
+		try (JsonParser parser = mapper.getFactory().createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String frame = parser.getCurrentName();
+				if ("format".equals(frame)) {
+					forEachTrackBox(mapper.readTree(json), visitor);
+					return;
+				}
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					parser.skipChildren();
+					continue;
+				}
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String box = parser.getCurrentName();
+					if (parser.nextToken().isScalarValue()) {
+						visitor.visit(frame, box, parser.getValueAsString());
+					}
+					else {
+						parser.skipChildren();
+					}
+				}
+			}
+		}
+	}
+
+	private void forEachTrackBox(JsonNode encoded, BoxVisitor visitor) throws IOException {
+		if (!FORMAT.equals(encoded.path("format").asText())) {
+			return;
+		}
+		JsonNode frameKeys = encoded.path("frames");
+		String prefix = frameKeys.path("prefix").asText();
+		String suffix = frameKeys.path("suffix").asText();
+		int digits = frameKeys.path("digits").asInt();
+		for (JsonNode track : encoded.path("tracks")) {
+			String label = track.path("label").asText();
+			int frame = track.path("start").asInt();
+			for (JsonNode box : track.path("boxes")) {
+				String key = box.get(0).asText();
+				for (int run = box.get(1).asInt(); run > 0; run--, frame++) {
+					visitor.visit(frameKey(prefix, frame, digits, suffix), key, label);
+				}
+			}
+		}
+	}
+
+	private static String frameKey(String prefix, int frame, int digits, String suffix) {
+		String number = digits > 0 ? String.format("%0" + digits + "d", frame) : String.valueOf(frame);
+		return prefix + number + suffix;
+	}
+
+	/** The distance between the centers of two boxes, or infinity if either key is not a box. */
+	private static double distance(String from, String to) {
+		double[] a = parseBox(from), b = parseBox(to);
+		if (a == null || b == null) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return Math.hypot((a[0] + a[2] / 2) - (b[0] + b[2] / 2), (a[1] + a[3] / 2) - (b[1] + b[3] / 2));
+	}
+
+	private static double[] parseBox(String key) {
+		String[] tokens = key.split(",");
+		if (tokens.length != 4) {
+			return null;
+		}
+		double[] box = new double[4];
+		try {
+			for (int i = 0; i < 4; i++) {
+				box[i] = Double.parseDouble(tokens[i]);
+			}
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+		return box;
+	}
+
+}
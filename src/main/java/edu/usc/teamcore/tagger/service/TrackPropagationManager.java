@@ -0,0 +1,156 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.ExecutorConfig;
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.dto.BoxBatchDTO.BoxResult;
+import edu.usc.teamcore.tagger.dto.PropagationDTO;
+import edu.usc.teamcore.tagger.dto.PropagationDTO.TrackedFrame;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the box tracker across consecutive frames of a video on the server,
+ * handing each frame's positions to a listener as soon as they are known.
+ * Each box keeps a motion model over the frames, so its search follows it.
+ */
+@Slf4j
+@Component
+public class TrackPropagationManager {
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private BoundingBoxesManager boxManager;
+
+	@Autowired
+	private TrackingEngines trackingEngines;
+
+	@Autowired
+	@Qualifier(ExecutorConfig.PROPAGATION_EXECUTOR)
+	private AsyncTaskExecutor propagationExecutor;
+
+	private final Map<String, Future<?>> jobs = new ConcurrentHashMap<>();
+
+	/**
+	 * Receives the progress of a propagation job, on the job's thread.
+	 */
+	public interface PropagationListener {
+
+		void onStart(String jobId) throws IOException;
+
+		void onFrame(TrackedFrame frame) throws IOException;
+
+		void onComplete(boolean cancelled) throws IOException;
+
+		void onError(Exception e);
+
+	}
+
+	/**
+	 * Starts propagating the boxes and returns the job id.
+	 */
+	public String start(PropagationDTO request, PropagationListener listener) throws IOException {
+		FrameNames.checkDirectory(request.getVideo());
+		if (request.getStartFrame() == null || request.getFrameCount() == null || request.getBufferSize() == null
+				|| request.getBoxes() == null) {
+			throw new IllegalArgumentException("Propagation needs a startFrame, frameCount, bufferSize and boxes");
+		}
+		if (request.getTrackingEngine() != null) {
+			trackingEngines.get(request.getTrackingEngine());
+		}
+
+		String jobId = UUID.randomUUID().toString();
+		listener.onStart(jobId);
+		// Registered before it runs, so a job that ends at once still removes itself
+		FutureTask<Void> job = new FutureTask<>(() -> run(jobId, request, listener), null);
+		jobs.put(jobId, job);
+		try {
+			propagationExecutor.execute(job);
+		}
+		catch (RuntimeException e) {
+			jobs.remove(jobId);
+			throw e;
+		}
+		return jobId;
+	}
+
+	/**
+	 * Cancels a running job. Returns false if there is no such job.
+	 */
+	public boolean cancel(String jobId) {
+		Future<?> job = jobs.remove(jobId);
+		return job != null && job.cancel(true);
+	}
+
+	private void run(String jobId, PropagationDTO request, PropagationListener listener) {
+		try {
+			String video = request.getVideo();
+			int step = Boolean.TRUE.equals(request.getBackward()) ? -1 : 1;
+			int frameCount = Math.min(request.getFrameCount(), taggingConf.getPropagationMaxFrames());
+			List<String> positions = new ArrayList<>(request.getBoxes());
+			List<MotionModel> motions = new ArrayList<>();
+			for (int i = 0; i < positions.size(); i++) {
+				motions.add(new MotionModel());
+			}
+
+			int frame = request.getStartFrame();
+			for (int n = 0; n < frameCount && !Thread.currentThread().isInterrupted(); n++) {
+				int next = frame + step;
+				String nextFile = framePath(video, next);
+				if (next < 0 || !new File(nextFile).exists()) {
+					break;
+				}
+
+				List<BoxResult> tracked;
+				try {
+					tracked = boxManager.getTranslatedBoxVals(framePath(video, frame), nextFile, positions,
+							request.getBufferSize(), request.getTrackingEngine(), motions);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				List<BoxResult> results = new ArrayList<>(tracked.size());
+				for (int i = 0; i < tracked.size(); i++) {
+					BoxResult result = tracked.get(i);
+					if (result.getError() == null) {
+						positions.set(i, result.getPosition());
+					}
+					results.add(new BoxResult(request.getBoxes().get(i), positions.get(i), result.getError()));
+				}
+				listener.onFrame(new TrackedFrame(next, FrameNames.frameName(video, next), results));
+				frame = next;
+			}
+			listener.onComplete(Thread.currentThread().isInterrupted());
+		}
+		catch (Exception e) {
+			if (!Thread.currentThread().isInterrupted()) {
+				log.warn("Propagation {} failed: {}", jobId, e.toString());
+				listener.onError(e);
+			}
+		}
+		finally {
+			jobs.remove(jobId);
+		}
+	}
+
+	private String framePath(String video, int index) {
+		return taggingConf.getVideosDir() + FrameNames.relativePath(video, index);
+	}
+
+}
@@ -0,0 +1,25 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.opencv.core.Rect;
+
+/**
+ * A way of finding a box of the previous frame in the current one. Engines
+ * trade accuracy for cost differently, so the engine can be chosen per video
+ * or per request; see {@link TrackingEngines}.
+ */
+public interface TrackingEngine {
+
+	/** The name the engine is configured and requested by. */
+	String getName();
+
+	/**
+	 * Searches a region of the current frame for a box of the previous frame
+	 * and returns the midpoint of what it found, relative to the region, as
+	 * {@code [x, y]}, or null if it found nothing.
+	 */
+	List<Integer> track(String prevFile, String currFile, Rect box, Rect searchRegion) throws IOException;
+
+}
@@ -0,0 +1,76 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.config.TaggingConfig.Video;
+
+/**
+ * The tracking engines by name, and which one tracks a box: the one the
+ * request asks for, or else the one configured for the video, or else the
+ * default.
+ */
+@Component
+public class TrackingEngines {
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private List<TrackingEngine> engineBeans;
+
+	private final Map<String, TrackingEngine> engines = new TreeMap<>();
+
+	/** Engines configured for particular videos, by directory. */
+	private final Map<String, TrackingEngine> videoEngines = new HashMap<>();
+
+	private TrackingEngine defaultEngine;
+
+	@PostConstruct
+	public void init() {
+		for (TrackingEngine engine : engineBeans) {
+			engines.put(engine.getName(), engine);
+		}
+		defaultEngine = get(taggingConf.getTrackingEngine());
+		for (Video video : taggingConf.getVideos()) {
+			if (video.getTrackingEngine() != null) {
+				videoEngines.put(video.getDirectory(), get(video.getTrackingEngine()));
+			}
+		}
+	}
+
+	/** Returns the engine of the given name. */
+	public TrackingEngine get(String name) {
+		TrackingEngine engine = engines.get(name);
+		if (engine == null) {
+			throw new IllegalArgumentException("Unknown tracking engine " + name + ", expected one of " + getNames());
+		}
+		return engine;
+	}
+
+	/**
+	 * Returns the engine to track a box into the given frame with, given the
+	 * name of the engine requested, if any.
+	 */
+	public TrackingEngine select(String frameFile, String requested) {
+		if (requested != null && !requested.isEmpty()) {
+			return get(requested);
+		}
+		TrackingEngine engine = videoEngines.get(FrameNames.directoryOf(frameFile));
+		return engine != null ? engine : defaultEngine;
+	}
+
+	public Set<String> getNames() {
+		return engines.keySet();
+	}
+
+}
@@ -0,0 +1,208 @@
+package edu.usc.teamcore.tagger.service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.usc.teamcore.tagger.config.TaggingConfig;
+import edu.usc.teamcore.tagger.config.TaggingConfig.Video;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The videos that can be tagged: those configured, in order, followed by
+ * any other frame directories found under the videos directory. Directories
+ * are listed once at startup and then kept up to date from a watch on the
+ * videos directory, so lookups never touch the disk for more than the
+ * frame count. Each video directory is watched too, so the manifest manager
+ * only stats frames again once one changed.
+ */
+@Slf4j
+@Component
+public class VideoCatalog {
+
+	@Autowired
+	private TaggingConfig taggingConf;
+
+	@Autowired
+	private FrameManifestManager manifestManager;
+
+	/** Configured videos by directory, in configured order. */
+	private final Map<String, Video> configured = new LinkedHashMap<>();
+
+	/** The directories under the videos directory. */
+	private final Set<String> directories = new ConcurrentSkipListSet<>();
+
+	private Path videosDir;
+
+	private WatchService watchService;
+
+	/** The key of the watch on the videos directory. */
+	private WatchKey videosKey;
+
+	/** The keys of the watches on the video directories, by directory. */
+	private final Map<String, WatchKey> videoKeys = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() throws IOException {
+		long start = System.currentTimeMillis();
+		for (Video video : taggingConf.getVideos()) {
+			configured.putIfAbsent(video.getDirectory(), video);
+		}
+		videosDir = Paths.get(taggingConf.getVideosDir());
+		if (!Files.isDirectory(videosDir)) {
+			log.warn("Videos directory {} does not exist", videosDir);
+			return;
+		}
+
+		// Watch before listing, so directories created in between are not missed
+		watchService = FileSystems.getDefault().newWatchService();
+		videosKey = videosDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_DELETE);
+		scan();
+		Thread watcher = new Thread(this::watch, "video-catalog-watch");
+		watcher.setDaemon(true);
+		watcher.start();
+		log.info("Found {} video directories for {} configured videos in {} ms", directories.size(),
+				configured.size(), System.currentTimeMillis() - start);
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		if (watchService != null) {
+			watchService.close();
+		}
+	}
+
+	/**
+	 * Returns a video by directory, with the number of frames in its
+	 * directory, whether or not it is configured or has a directory.
+	 */
+	public Video get(String directory) {
+		Video video = new Video();
+		video.setDirectory(directory);
+		video.setIsAccessible(directories.contains(directory));
+		Integer numFrames = video.getIsAccessible() ? manifestManager.getFrameCount(directory) : null;
+		if (numFrames == null) {
+			Video configuredVideo = configured.get(directory);
+			numFrames = configuredVideo == null ? null : configuredVideo.getNumFrames();
+		}
+		video.setNumFrames(numFrames);
+		return video;
+	}
+
+	/**
+	 * Returns the configured videos followed by the other directories that
+	 * hold frames, by name.
+	 */
+	public List<Video> getVideos() {
+		List<Video> videos = new ArrayList<>();
+		for (String directory : configured.keySet()) {
+			videos.add(get(directory));
+		}
+		for (String directory : directories) {
+			if (!configured.containsKey(directory)) {
+				Video video = get(directory);
+				if (video.getNumFrames() != null && video.getNumFrames() > 0) {
+					videos.add(video);
+				}
+			}
+		}
+		return videos;
+	}
+
+	private void scan() throws IOException {
+		try (Stream<Path> paths = Files.list(videosDir)) {
+			Set<String> found = new HashSet<>();
+			paths.filter(Files::isDirectory).forEach(path -> found.add(path.getFileName().toString()));
+			directories.retainAll(found);
+			directories.addAll(found);
+			found.forEach(this::watchVideo);
+		}
+	}
+
+	/** Watches a video directory for frames being added, removed or rewritten. */
+	private void watchVideo(String directory) {
+		WatchKey watched = videoKeys.get(directory);
+		if (watched != null && watched.isValid()) {
+			return;
+		}
+		try {
+			WatchKey key = videosDir.resolve(directory).register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			videoKeys.put(directory, key);
+			manifestManager.onWatched(directory);
+		}
+		catch (IOException e) {
+			log.warn("Unable to watch {}, its frames are checked on every request: {}", directory, e.toString());
+		}
+	}
+
+	private void watch() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			}
+			catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			if (key != videosKey) {
+				// Any event, overflows included, may mean changed frames
+				String directory = ((Path) key.watchable()).getFileName().toString();
+				key.pollEvents();
+				manifestManager.onChanged(directory);
+				if (!key.reset() && videoKeys.remove(directory, key)) {
+					manifestManager.onUnwatched(directory);
+				}
+				continue;
+			}
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					try {
+						scan();
+					}
+					catch (IOException e) {
+						log.warn("Unable to list {}: {}", videosDir, e.toString());
+					}
+					continue;
+				}
+				String directory = event.context().toString();
+				if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+					directories.remove(directory);
+				}
+				else if (Files.isDirectory(videosDir.resolve(directory))) {
+					directories.add(directory);
+					watchVideo(directory);
+					log.info("Found video directory {}", directory);
+				}
+			}
+			if (!key.reset()) {
+				log.warn("Stopped watching {}", videosDir);
+				return;
+			}
+		}
+	}
+
+}
@@ -21,9 +21,20 @@ var App = function() {
 		reviewEntryTime: null, // Time of the entry being reviewed
 		isSeeking: false, // Whether the video is being seeked
 		numFramesLoaded: 0, // The number of images loaded
+		framesToShow: 0, // The number of images loaded before the player is shown
+		frameWindow: 30, // The number of frames kept loaded either side of the current one
+		framePack: null, // Index of the frame pack images are loaded from
+		frameTier: 'full', // Tier images are loaded at one by one, while the frame pack is being built
 		imageLoadFailed: false, // Whether image loading failed
 		canvas: null, // The canvas object
 		isCopyBBoxMode: false, // Whether the bounding boxes should be predicted or copied
+		propagationJobId: null, // Id of the running server-side propagation job
+		propagationAbort: null, // Aborts the running propagation stream
+		draftId: null, // Id of the server-side draft deltas are saved to
+		draftVersion: 0, // Version of the draft the next delta is based on
+		draftSynced: {}, // Data as last saved to the draft
+		draftSyncTimer: null, // Pending delayed draft save
+		draftSyncing: false, // Whether a draft save is in flight
 	};
 
 	/**
@@ -51,13 +62,13 @@ var App = function() {
 						return null;
 					},
 					nextFrameId: function(){
-						if(_this.options.frameIndex < _this.options.numFramesLoaded)
+						if(_this.options.frameIndex < _this.options.video.numFrames - 1)
 							return _this._generateFrameName(_this.options.frameIndex+1);
 						return null;
 					},
 					dataUpdate: function(data) {
-						console.log(JSON.stringify(data));
 						_this._autoSaveData(data);
+						_this._scheduleDraftSync();
 					}
 				});
 				_this.options.canvas.init();
@@ -98,6 +109,7 @@ var App = function() {
 
 		// Button click handling
 		$('#copy-toggle').click(function() {  _this.toggleCopy(); });
+		$('#propagate').click(function() { _this.togglePropagation(); });
 		$('#step-backward').click(function() { _this.seekLeft(); });
 		$('#play').click(function() { _this.play(); });
 		$('#pause').click(function() { _this.pause(); });
@@ -141,6 +153,11 @@ var App = function() {
 		this.options.optionName = !!autoSavedData.optionName ? autoSavedData.optionName : 'Review';
 		this.options.isReviewMode = autoSavedData.isReviewMode;
 		this.options.reviewEntryTime = autoSavedData.reviewEntryTime;
+		if (!!autoSavedData.draft) {
+			this.options.draftId = autoSavedData.draft.id;
+			this.options.draftVersion = autoSavedData.draft.version;
+			this.options.draftSynced = autoSavedData.draft.synced;
+		}
 		this.options.canvas.loadData(autoSavedData.data);
 	};
 
@@ -158,7 +175,12 @@ var App = function() {
 			visited: this.options.visited,
 			optionName: this.options.optionName,
 			isReviewMode: this.options.isReviewMode,
-			reviewEntryTime: this.options.reviewEntryTime
+			reviewEntryTime: this.options.reviewEntryTime,
+			draft: !this.options.draftId ? null : {
+				id: this.options.draftId,
+				version: this.options.draftVersion,
+				synced: this.options.draftSynced
+			}
 		};
 		localStorage.setItem("autoSavedData", JSON.stringify(autoSavedData));
 	};
@@ -173,6 +195,111 @@ var App = function() {
 		localStorage.removeItem("autoSavedData");
 	};
 
+	/**
+	 * Saves the changes to the draft after a short pause in editing.
+	 */
+	this._scheduleDraftSync = function() {
+		var _this = this;
+		if (!this.options.video) {
+			return;
+		}
+		clearTimeout(this.options.draftSyncTimer);
+		this.options.draftSyncTimer = setTimeout(function() {
+			_this.options.draftSyncTimer = null;
+			_this.syncDraft();
+		}, 2000);
+	};
+
+	/**
+	 * Returns the frames changed since the draft was last saved, with null
+	 * for frames removed since, or null if nothing changed.
+	 */
+	this._draftDelta = function(data) {
+		var synced = this.options.draftSynced;
+		var delta = {};
+		var changed = false;
+		for (var frame in data) {
+			if (JSON.stringify(data[frame]) !== JSON.stringify(synced[frame])) {
+				delta[frame] = data[frame];
+				changed = true;
+			}
+		}
+		for (var frame in synced) {
+			if (!(frame in data)) {
+				delta[frame] = null;
+				changed = true;
+			}
+		}
+		return changed ? delta : null;
+	};
+
+	/**
+	 * Saves the frames changed since the last save to the draft, opening a
+	 * new draft with all the data if there is none or it is out of date.
+	 * Calls done with whether the draft is up to date.
+	 */
+	this.syncDraft = function(done) {
+		var _this = this;
+		done = done || function() {};
+		if (this.options.draftSyncing) {
+			setTimeout(function() { _this.syncDraft(done); }, 200);
+			return;
+		}
+		var data = $.extend(true, {}, this.options.canvas.options.data);
+		var finish = function(ok) {
+			_this.options.draftSyncing = false;
+			_this._autoSaveData(_this.options.canvas.options.data);
+			done(ok);
+		};
+		this.options.draftSyncing = true;
+
+		if (!this.options.draftId) {
+			$.ajax({
+				url: '/data/draft',
+				contentType: 'application/json',
+				type: 'POST',
+				headers: {
+					'X-fileName': this.options.video.directory,
+					'X-entryTime': this.options.isReviewMode ? this.options.reviewEntryTime : undefined,
+					'X-optionName': this.options.optionName,
+					'X-userAgent': navigator.userAgent
+				},
+				data: JSON.stringify(data)
+			}).done(function(draft) {
+				_this.options.draftId = draft.id;
+				_this.options.draftVersion = draft.version;
+				_this.options.draftSynced = data;
+				finish(true);
+			}).fail(function() {
+				finish(false);
+			});
+			return;
+		}
+
+		var delta = this._draftDelta(data);
+		if (delta == null) {
+			finish(true);
+			return;
+		}
+		$.ajax({
+			url: '/data/draft/' + this.options.draftId,
+			contentType: 'application/json',
+			type: 'PATCH',
+			headers: { 'X-baseVersion': this.options.draftVersion },
+			data: JSON.stringify(delta)
+		}).done(function(draft) {
+			_this.options.draftVersion = draft.version;
+			_this.options.draftSynced = data;
+			finish(true);
+		}).fail(function() {
+			// The draft is gone, out of date or failed to save, start a new one with all the data
+			$.ajax({ url: '/data/draft/' + _this.options.draftId, type: 'DELETE' });
+			_this.options.draftId = null;
+			_this.options.draftSyncing = false;
+			_this.syncDraft(done);
+		});
+	};
+
 	/**
 	 * Sets help text in the help popup.
 	 */
@@ -346,6 +473,9 @@ var App = function() {
 		if (confirm("Really reset?") != true)
 			return;
 
+		if (!!this.options.draftId) {
+			$.ajax({ url: '/data/draft/' + this.options.draftId, type: 'DELETE', async: false });
+		}
 		this.resetAutoSavedData();
 		location.reload();
 	};
@@ -358,6 +488,37 @@ var App = function() {
 		if (confirm("Sure to submit?") != true)
 			return;
 
+		clearTimeout(this.options.draftSyncTimer);
+		this.syncDraft(function(synced) {
+			if (synced) {
+				_this._commitDraft();
+			}
+			else {
+				_this._submitFullData();
+			}
+		});
+	};
+
+	/**
+	 * Submits the draft as the labels of the video.
+	 */
+	this._commitDraft = function() {
+		var _this = this;
+		$.ajax({
+			url: '/data/draft/' + this.options.draftId + '/commit',
+			type: 'POST'
+		}).done(function() {
+			_this._submitted();
+		}).fail(function() {
+			alert('Some error occurred, please try again!');
+		});
+	};
+
+	/**
+	 * Submits all the labels at once, when the draft could not be saved.
+	 */
+	this._submitFullData = function() {
+		var _this = this;
 		$.ajax({
 			url: this.options.isReviewMode ? '/data/review' : '/data',
 			contentType: 'application/json',
@@ -370,15 +531,24 @@ var App = function() {
 			},
 			data: JSON.stringify(this.options.canvas.options.data)
 		}).done(function() {
-			$('body')
-				.css({ 'text-align': 'center', 'margin-top': '50px' })
-				.html('<h1 style="color: #f1c40f;">Thank you!</h1>');
-			_this.resetAutoSavedData();
+			_this._submitted();
 		}).fail(function() {
 			alert('Some error occurred, please try again!');
 		});
 	};
 
+	/**
+	 * Thanks the user once the labels are submitted.
+	 */
+	this._submitted = function() {
+		clearTimeout(this.options.draftSyncTimer);
+		this.options.draftId = null;
+		$('body')
+			.css({ 'text-align': 'center', 'margin-top': '50px' })
+			.html('<h1 style="color: #f1c40f;">Thank you!</h1>');
+		this.resetAutoSavedData();
+	};
+
 	/**
 	 * Plays the video at 1 FPS.
 	 */
@@ -412,6 +582,7 @@ var App = function() {
 			clearInterval(this.options.playInterval);
 			this.options.playInterval = null;
 		}
+		this._showFullFrame(this.options.frameIndex);
 	};
 
 	/**
@@ -453,10 +624,32 @@ var App = function() {
 	 */
 	this._reloadFrame = function() {
 		this.options.isSeeking = true;
+		this._ensureWindow();
 		jQuery('.video-frame').hide();
 		jQuery('#framenum-' + this.options.frameIndex).show();
+		if (!this.options.isPlaying) {
+			this._showFullFrame(this.options.frameIndex);
+		}
 		this.options.isSeeking = false;
 	};
+
+	/**
+	 * Replaces a frame loaded at a smaller tier with the full frame, for
+	 * tagging. Frames still loading are left alone so they are counted once.
+	 */
+	this._showFullFrame = function(i) {
+		var img = $('#framenum-' + i)[0];
+		if (!img || !img.src || !img.complete || img.getAttribute('data-tier') == 'full') {
+			return;
+		}
+		img.onload = null;
+		img.onerror = null;
+		if (img.src.indexOf('blob:') == 0) {
+			URL.revokeObjectURL(img.src);
+		}
+		img.setAttribute('data-tier', 'full');
+		img.src = this._frameUrl(this.options.video.directory, i);
+	};
 	
 	/**
 	 * Seeks 1 frame right.
@@ -523,7 +716,7 @@ var App = function() {
 	this.imageLoaded = function(imageNum) {
 		console.log('Loaded image: ' + imageNum);
 		this.options.numFramesLoaded++;
-		if (this.options.numFramesLoaded == this.options.video.numFrames) {
+		if (this.options.numFramesLoaded == this.options.framesToShow) {
 			this.removeLoader();
 			$('.player-container').css('display', '');
 			this.options.isReviewMode && this.markAllVisited();
@@ -533,6 +726,7 @@ var App = function() {
 				this._reloadFrame();
 				this.updateProgress();
 			}
+			this._showFullFrame(this.options.frameIndex);
 		}
 	};
 
@@ -555,9 +749,10 @@ var App = function() {
 	};
 
 	/**
-	 * Creates a new Image for a particular frame.
+	 * Creates a new Image for a particular frame, displayed at the full frame
+	 * size whatever the tier it is loaded at, so boxes keep their place.
 	 */
-	this.createImage = function(directory, i) {
+	this.createImage = function(directory, i, src) {
 		var _this = this;
 		var img = new Image();
 		img.setAttribute('id', 'framenum-' + i);
@@ -565,8 +760,14 @@ var App = function() {
 		img.setAttribute('class', 'video-frame');
 	    img.onload = function() { _this.imageLoaded(i); };
 	    img.onerror = function() { _this.imageFailed(i); };
-	    img.src = '/input/' + directory + '/' + directory + '_' + this.padDigits(i, 10) + '.jpg';
-	    if (i > 0) {
+	    if (this.options.video.width && this.options.video.height) {
+	    	img.width = this.options.video.width;
+	    	img.height = this.options.video.height;
+	    }
+	    if (src !== null) {
+	    	img.src = src || this._frameUrl(directory, i);
+	    }
+	    if (i != this.options.frameIndex) {
 	    	img.style.display = 'none';
 	    }
 	    return img;
@@ -579,14 +780,203 @@ var App = function() {
 		var _this = this;
 		var viewType = this.options.isReviewMode ? this.options.optionName : 'Label';
 		$('#player1-title').html(viewType + ': ' + this.options.video.directory);
-		var video = $('#player1').get(0);
-		video.innerHTML = '';
-		for (var i = 0; i < this.options.video.numFrames; i++) {
-			var img = this.createImage(this.options.video.directory, i);
-			video.append(img);
+		$.ajax({
+			url: '/data/prefetch',
+			type: 'POST',
+			headers: {
+				'X-fileName': this.options.video.directory,
+				'X-frameIndex': this.options.frameIndex
+			}
+		});
+		var directory = this.options.video.directory;
+		$('#player1').get(0).innerHTML = '';
+		this.options.framePack = null;
+		this.options.frameTier = 'full';
+		var start = function() {
+			var first = Math.max(0, _this.options.frameIndex - _this.options.frameWindow);
+			var last = Math.min(_this.options.video.numFrames - 1, _this.options.frameIndex + _this.options.frameWindow);
+			_this.options.framesToShow = last - first + 1;
+			_this._ensureWindow();
+		};
+		$.getJSON('/frames/' + directory + '/manifest?cursor=' + this.options.frameIndex + '&window=0').done(function(manifest) {
+			_this.options.video.numFrames = manifest.frameCount;
+			_this.options.video.width = manifest.width;
+			_this.options.video.height = manifest.height;
+			if (_this.options.frameIndex > manifest.frameCount - 1) {
+				_this.options.frameIndex = Math.max(0, manifest.frameCount - 1);
+			}
+			// Play back from the small tier; frames are swapped for full ones when paused
+			_this._fetchFramePackIndex(directory, 'small').done(function(index) {
+				if (index) {
+					_this.options.framePack = index;
+				}
+				else {
+					_this.options.frameTier = 'small';
+				}
+			}).always(start);
+		}).fail(start);
+	};
+
+	/**
+	 * Keeps images for the frames within the window around the current one,
+	 * loading the missing ones and dropping those that fell out of it.
+	 */
+	this._ensureWindow = function() {
+		var directory = this.options.video.directory;
+		var player = $('#player1').get(0);
+		var first = Math.max(0, this.options.frameIndex - this.options.frameWindow);
+		var last = Math.min(this.options.video.numFrames - 1, this.options.frameIndex + this.options.frameWindow);
+		$(player).find('.video-frame').each(function() {
+			var i = parseInt(this.getAttribute('data-framenum'));
+			if (i < first || i > last) {
+				if (this.src.indexOf('blob:') == 0) {
+					URL.revokeObjectURL(this.src);
+				}
+				$(this).remove();
+			}
+		});
+		var missing = [];
+		for (var i = first; i <= last; i++) {
+			if (!document.getElementById('framenum-' + i)) {
+				var img = this.createImage(directory, i, null);
+				player.append(img);
+				missing.push(img);
+			}
+		}
+		if (missing.length == 0) {
+			return;
+		}
+		if (this.options.framePack) {
+			this._loadFramePack(directory, this.options.framePack, missing);
+		}
+		else {
+			this._loadFrameFiles(directory, missing);
 		}
 	};
 
+	/**
+	 * Returns the URL of a single frame image.
+	 */
+	this._frameUrl = function(directory, i) {
+		return '/input/' + directory + '/' + directory + '_' + this.padDigits(i, 10) + '.jpg';
+	};
+
+	/**
+	 * Loads the given frame images one request per image, at the small tier
+	 * while the frame pack is being built.
+	 */
+	this._loadFrameFiles = function(directory, images) {
+		var tier = this.options.frameTier;
+		for (var i = 0; i < images.length; i++) {
+			var frameNum = parseInt(images[i].getAttribute('data-framenum'));
+			images[i].setAttribute('data-tier', tier);
+			images[i].src = tier == 'full' ? this._frameUrl(directory, frameNum)
+					: '/frames/' + directory + '/' + frameNum + '?tier=' + tier;
+		}
+	};
+
+	/**
+	 * Fetches the index of a video's frame pack at a tier, adding the offset
+	 * of every frame, or null while the pack is being built.
+	 */
+	this._fetchFramePackIndex = function(directory, tier) {
+		return $.ajax({
+			url: '/frames/' + directory + '/index?tier=' + tier,
+			dataType: 'text'
+		}).then(function(body, status, xhr) {
+			if (xhr.status == 202) {
+				return null;
+			}
+			var index = JSON.parse(body);
+			index.offsets = [];
+			var offset = 0;
+			for (var i = 0; i < index.lengths.length; i++) {
+				index.offsets.push(offset);
+				offset += index.lengths[i];
+			}
+			return index;
+		});
+	};
+
+	/**
+	 * Loads the given frame images, in frame order, from the video's frame
+	 * pack, a few megabytes of consecutive frames per range request, falling
+	 * back to one request per image on failure. If the pack was rebuilt since
+	 * its index was fetched, the index is fetched again once.
+	 */
+	this._loadFramePack = function(directory, index, images) {
+		var _this = this;
+		var refetched = false;
+		var chunkBytes = 4 * 1024 * 1024;
+		var frameNum = function(img) {
+			return parseInt(img.getAttribute('data-framenum'));
+		};
+		var loadChunk = function(k) {
+			if (k >= images.length) {
+				return;
+			}
+			var first = frameNum(images[k]);
+			if (first >= index.lengths.length) {
+				_this._loadFrameFiles(directory, images.slice(k));
+				return;
+			}
+			var m = k;
+			while (m + 1 < images.length) {
+				var next = frameNum(images[m + 1]);
+				if (next != frameNum(images[m]) + 1 || next >= index.lengths.length
+						|| index.offsets[next] + index.lengths[next] - index.offsets[first] > chunkBytes) {
+					break;
+				}
+				m++;
+			}
+			var last = frameNum(images[m]);
+			var end = index.offsets[last] + index.lengths[last] - 1;
+			fetch('/frames/' + directory + '/pack?tier=' + index.tier + '&v=' + index.etag, {
+				credentials: 'same-origin',
+				headers: { 'Range': 'bytes=' + index.offsets[first] + '-' + end }
+			}).then(function(response) {
+				if (response.status == 412 && !refetched) {
+					refetched = true;
+					return _this._fetchFramePackIndex(directory, index.tier).then(function(current) {
+						if (!current) {
+							// Rebuilding, so load the frames one at a time meanwhile
+							_this.options.framePack = null;
+							_this.options.frameTier = index.tier;
+							_this._loadFrameFiles(directory, images.slice(k));
+							return;
+						}
+						index = current;
+						if (_this.options.framePack && _this.options.framePack.tier == current.tier) {
+							_this.options.framePack = current;
+						}
+						loadChunk(k);
+					});
+				}
+				if (!response.ok) {
+					throw new Error('Frame pack request failed: ' + response.status);
+				}
+				// A server ignoring the range sends the whole pack
+				var base = response.status == 206 ? index.offsets[first] : 0;
+				return response.arrayBuffer().then(function(buffer) {
+					for (var j = k; j <= m; j++) {
+						// Skip frames dropped from the window while loading
+						if (!images[j].parentNode) {
+							continue;
+						}
+						var n = frameNum(images[j]);
+						var bytes = new Uint8Array(buffer, index.offsets[n] - base, index.lengths[n]);
+						images[j].setAttribute('data-tier', index.tier);
+						images[j].src = URL.createObjectURL(new Blob([bytes], { type: 'image/jpeg' }));
+					}
+					loadChunk(m + 1);
+				});
+			}).catch(function() {
+				_this._loadFrameFiles(directory, images.slice(k));
+			});
+		};
+		loadChunk(0);
+	};
+
 	/**
 	 * Marks all frames as visited.
 	 */
@@ -620,6 +1010,7 @@ var App = function() {
 	 * Sends the previous and current frames to calculate the new position of the bounding box.
 	 */
 	this.getBoxPosition = function(selectedBounds) {
+		var _this = this;
 		var newPosition = selectedBounds;
 		if (this.options.frameIndex > 0 && !this.isCopyBBoxMode) {
 			var directory = this.options.video.directory;
@@ -647,20 +1038,7 @@ var App = function() {
 				newPosition = data.toString().replace("[","").replace("]","").replace(/\ /g, '');
 				
 				//Handle boundary predictions
-				var width = parseInt($("#overlay1").width());
-				var height = parseInt($("#overlay1").height());
-				var x = parseInt(newPosition.split(',')[0]);
-				var y = parseInt(newPosition.split(',')[1]);
-				var w = parseInt(newPosition.split(',')[2]);
-				var h = parseInt(newPosition.split(',')[3]);
-				
-				x1 = (x < 0) ? 0 : x;
-				y1 = (y < 0) ? 0 : y;
-				w1 = (x+w >= width) ? width - x : w;
-				h1 = (y+h >= height) ? height - y : h;
-				
-				newPosition = x1 + "," + y1 + "," + w1 + "," + h1;
-				
+				newPosition = _this._clampBox(newPosition);
 			}).fail(function(error) {
 				alert('Some error occurred, please try again!');
 			});
@@ -668,6 +1046,177 @@ var App = function() {
 		return newPosition;
 	};
 	
+	/**
+	 * Sends every box of the previous frame in one request and returns a map
+	 * from each box to its position in the current frame.
+	 */
+	this.getBoxPositions = function(boundsList) {
+		var _this = this;
+		var positions = {};
+		boundsList.forEach(function(bounds) { positions[bounds] = bounds; });
+		if (this.options.frameIndex > 0 && !this.isCopyBBoxMode && boundsList.length > 0) {
+			var directory = this.options.video.directory;
+			var batch = {
+					'prevFilename': directory + "/" + directory + '_' + this.padDigits(this.options.frameIndex-1, 10) + '.jpg',
+					'currFilename': directory + "/" + directory + '_' + this.padDigits(this.options.frameIndex, 10) + '.jpg',
+					'bufferSize': parseInt($('#bbox-buffer')[0].value),
+					'boxes': boundsList
+			};
+			$.ajax({
+				url: '/data/box/batch',
+				contentType: 'application/json',
+				type: 'POST',
+				data: JSON.stringify(batch),
+				async: false
+			}).done(function(results) {
+				results.forEach(function(result) {
+					if (!!result.error) {
+						console.log('Could not track ' + result.bounds + ': ' + result.error);
+					}
+					else {
+						positions[result.bounds] = _this._clampBox(result.position);
+					}
+				});
+			}).fail(function(error) {
+				alert('Some error occurred, please try again!');
+			});
+		}
+		return positions;
+	};
+
+	/**
+	 * Keeps a predicted "x,y,w,h" box within the overlay.
+	 */
+	this._clampBox = function(position) {
+		var width = parseInt($("#overlay1").width());
+		var height = parseInt($("#overlay1").height());
+		var x = parseInt(position.split(',')[0]);
+		var y = parseInt(position.split(',')[1]);
+		var w = parseInt(position.split(',')[2]);
+		var h = parseInt(position.split(',')[3]);
+
+		var x1 = (x < 0) ? 0 : x;
+		var y1 = (y < 0) ? 0 : y;
+		var w1 = (x+w >= width) ? width - x : w;
+		var h1 = (y+h >= height) ? height - y : h;
+		return x1 + "," + y1 + "," + w1 + "," + h1;
+	};
+	
+	/**
+	 * Starts tracking the boxes of the current frame over the next frames on
+	 * the server, or cancels the running job.
+	 */
+	this.togglePropagation = function() {
+		if (!!this.options.propagationAbort) {
+			this.cancelPropagation();
+			return;
+		}
+		var canvasOptions = this.options.canvas.options;
+		var frameId = canvasOptions.currentFrameId();
+		var boxLabels = canvasOptions.data[frameId];
+		if (!boxLabels || Object.keys(boxLabels).length == 0) {
+			alert('There are no cells on this frame to track.');
+			return;
+		}
+		var frameCount = parseInt(prompt('Number of frames to track the cells over:', '50'));
+		if (!(frameCount > 0)) {
+			return;
+		}
+		this.propagate(frameId, boxLabels, frameCount);
+	};
+
+	/**
+	 * Streams tracked box positions from the server into the label data.
+	 */
+	this.propagate = function(frameId, boxLabels, frameCount) {
+		var _this = this;
+		var canvasOptions = this.options.canvas.options;
+		var request = {
+			video: this.options.video.directory,
+			startFrame: this.options.frameIndex,
+			frameCount: frameCount,
+			backward: false,
+			bufferSize: parseInt($('#bbox-buffer')[0].value),
+			boxes: Object.keys(boxLabels)
+		};
+		var controller = new AbortController();
+		this.options.propagationAbort = controller;
+		$('#propagate').css('color', 'white');
+
+		var handleEvent = function(name, data) {
+			if (name == 'job') {
+				_this.options.propagationJobId = data;
+			}
+			else if (name == 'frame') {
+				var frame = JSON.parse(data);
+				var cells = {};
+				frame.boxes.forEach(function(box) {
+					if (!box.error) {
+						cells[_this._clampBox(box.position)] = boxLabels[box.bounds];
+					}
+				});
+				canvasOptions.data[frame.frameName] = cells;
+				_this.options.visited[frame.frame] = true;
+			}
+		};
+
+		fetch('/data/track', {
+			method: 'POST',
+			credentials: 'same-origin',
+			headers: { 'Content-Type': 'application/json', 'Accept': 'text/event-stream' },
+			body: JSON.stringify(request),
+			signal: controller.signal
+		}).then(function(response) {
+			var reader = response.body.getReader();
+			var decoder = new TextDecoder();
+			var buffer = '';
+			var read = function() {
+				return reader.read().then(function(chunk) {
+					if (chunk.done) {
+						return;
+					}
+					buffer += decoder.decode(chunk.value, { stream: true });
+					var events = buffer.split('\n\n');
+					buffer = events.pop();
+					events.forEach(function(event) {
+						var name = 'message', data = [];
+						event.split('\n').forEach(function(line) {
+							if (line.indexOf('event:') == 0) name = line.substring(6);
+							else if (line.indexOf('data:') == 0) data.push(line.substring(5));
+						});
+						handleEvent(name, data.join('\n'));
+					});
+					return read();
+				});
+			};
+			return read();
+		}).catch(function(error) {
+			if (error.name != 'AbortError') {
+				alert('Some error occurred, please try again!');
+			}
+		}).then(function() {
+			_this._propagationFinished();
+			canvasOptions.dataUpdate(canvasOptions.data);
+		});
+	};
+
+	/**
+	 * Cancels the running propagation job.
+	 */
+	this.cancelPropagation = function() {
+		if (!!this.options.propagationJobId) {
+			$.ajax({ url: '/data/track/' + this.options.propagationJobId, type: 'DELETE' });
+		}
+		this.options.propagationAbort.abort();
+		this._propagationFinished();
+	};
+
+	this._propagationFinished = function() {
+		this.options.propagationAbort = null;
+		this.options.propagationJobId = null;
+		$('#propagate').css('color', '');
+	};
+	
 	this.showFrameLoader = function(){
 		$(".next-frame-loader")[0].style.display = 'block';
 	}
@@ -708,8 +708,9 @@ var Canvas = function(options) {
 				this.options.data[frameId] = {};
 			}
 			var prevframeId = this.options.prevFrameId();
+			var positions = app.getBoxPositions(Array.from(this.options.modifiedBBoxes));
 			this.options.modifiedBBoxes.forEach(k => {
-				var key = app.getBoxPosition(k);
+				var key = positions[k];
 				if(key != null && key != undefined && this.options.data[prevframeId] != undefined) {
 					this.options.data[frameId][key] = this.options.data[prevframeId][k];
 					newBBoxes.add(key);
@@ -0,0 +1,73 @@
+package edu.usc.teamcore.tagger.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ConnectedComponentManagerTests {
+
+	private final ConnectedComponentManager componentMgr = new ConnectedComponentManager();
+
+	@Test
+	public void findsMidpointOfLargestComponent() {
+		int[][] adjMatrix =
+			   {{0, 0, 0, 1, 0},
+				{0, 0, 1, 1, 0},
+				{0, 0, 0, 1, 0},
+				{0, 0, 0, 1, 1},
+				{0, 0, 0, 0, 0}};
+		assertEquals(Arrays.asList(1, 3), componentMgr.findConnectedComponent(adjMatrix));
+	}
+
+	@Test
+	public void mergesComponentsJoinedLaterInTheRaster() {
+		byte[] pixels = {
+				1, 0, 1, 0,
+				1, 0, 1, 0,
+				1, 1, 1, 0,
+				0, 0, 0, 1 };
+		ComponentLabeler labeler = new ComponentLabeler();
+		assertEquals(2, labeler.label(pixels, 4, 4));
+		int largest = labeler.largestComponent(2);
+		assertEquals(7, labeler.area(largest));
+		assertEquals(0, labeler.minX(largest));
+		assertEquals(2, labeler.maxX(largest));
+		assertEquals(2, labeler.maxY(largest));
+		assertEquals(1.0, labeler.centroidX(largest), 1e-9);
+		assertEquals(8.0 / 7, labeler.centroidY(largest), 1e-9);
+	}
+
+	@Test
+	public void ignoresIsolatedPixels() {
+		byte[] isolated = {
+				1, 0, 1,
+				0, 0, 0,
+				1, 0, 1 };
+		assertNull(componentMgr.findConnectedComponent(isolated, 3, 3));
+	}
+
+	@Test
+	public void breaksTiesInRasterOrder() {
+		byte[] tie = {
+				0, 0, 0, 1, 1,
+				0, 0, 0, 0, 0,
+				1, 1, 0, 0, 0 };
+		assertEquals(Arrays.asList(3, 0), componentMgr.findConnectedComponent(tie, 5, 3));
+	}
+
+	@Test
+	public void reusesBuffersAcrossImagesOfDifferentSizes() {
+		ComponentLabeler labeler = new ComponentLabeler();
+		byte[] checkerboard = new byte[64 * 64];
+		for (int i = 0; i < checkerboard.length; i++) {
+			checkerboard[i] = (byte) (((i / 64) + (i % 64)) % 2);
+		}
+		assertEquals(64 * 64 / 2, labeler.label(checkerboard, 64, 64));
+		assertEquals(1, labeler.label(new byte[] { 1, 1, 1, 1 }, 2, 2));
+		assertEquals(4, labeler.area(1));
+	}
+
+}
@@ -0,0 +1,60 @@
+package edu.usc.teamcore.tagger.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+public class FrameTests {
+
+	private static final int THRESHOLD = 200;
+
+	@BeforeClass
+	public static void loadOpenCv() {
+		OpenCv.load();
+	}
+
+	private static int bruteForceCount(byte[] pixels, int width, Rect region) {
+		int count = 0;
+		for (int y = region.y; y < region.y + region.height; y++) {
+			for (int x = region.x; x < region.x + region.width; x++) {
+				if ((pixels[y * width + x] & 0xff) > THRESHOLD) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void countsBrightPixelsOfAnyRegion() {
+		int width = 37, height = 23;
+		Random random = new Random(7);
+		byte[] pixels = new byte[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			// Around the threshold, so pixels equal to it are not counted
+			pixels[i] = (byte) (THRESHOLD - 2 + random.nextInt(5));
+		}
+		Mat mat = new Mat(height, width, CvType.CV_8UC1);
+		mat.put(0, 0, pixels);
+
+		try (Frame frame = Frame.withBrightCounts("frame.jpg", 0, 0, mat, THRESHOLD)) {
+			Rect[] edges = { new Rect(0, 0, width, height), new Rect(0, 0, 1, 1), new Rect(width - 1, height - 1, 1, 1),
+					new Rect(0, height - 1, width, 1), new Rect(width - 1, 0, 1, height), new Rect(5, 5, 0, 3) };
+			for (Rect region : edges) {
+				assertEquals(region.toString(), bruteForceCount(pixels, width, region), frame.countBrightPixels(region));
+			}
+			for (int i = 0; i < 500; i++) {
+				int x = random.nextInt(width), y = random.nextInt(height);
+				Rect region = new Rect(x, y, 1 + random.nextInt(width - x), 1 + random.nextInt(height - y));
+				assertEquals(region.toString(), bruteForceCount(pixels, width, region), frame.countBrightPixels(region));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package edu.usc.teamcore.tagger.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MotionModelTests {
+
+	@Test
+	public void predictsOnlyOnceObserved() {
+		MotionModel model = new MotionModel();
+		assertFalse(model.canPredict());
+		assertEquals(0, model.getShiftX());
+		assertEquals(0, model.getShiftY());
+
+		model.observe(4, -2);
+		assertTrue(model.canPredict());
+		assertEquals(4, model.getShiftX());
+		assertEquals(-2, model.getShiftY());
+	}
+
+	@Test
+	public void smoothesLaterDisplacements() {
+		MotionModel model = new MotionModel();
+		model.observe(4, -2);
+		model.observe(8, 2);
+		assertEquals(6, model.getShiftX());
+		assertEquals(0, model.getShiftY());
+
+		// One outlier moves the prediction halfway
+		model.observe(-10, 0);
+		assertEquals(-2, model.getShiftX());
+		assertEquals(0, model.getShiftY());
+	}
+
+	@Test
+	public void forgetsMotionOnReset() {
+		MotionModel model = new MotionModel();
+		model.observe(4, -2);
+		model.observe(8, 2);
+		model.reset();
+		assertFalse(model.canPredict());
+		assertEquals(0, model.getShiftX());
+		assertEquals(0, model.getShiftY());
+
+		// The next displacement is taken as is, not smoothed with the old ones
+		model.observe(-3, 5);
+		assertEquals(-3, model.getShiftX());
+		assertEquals(5, model.getShiftY());
+	}
+
+}
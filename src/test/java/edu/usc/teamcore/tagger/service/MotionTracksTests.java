@@ -0,0 +1,57 @@
+package edu.usc.teamcore.tagger.service;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class MotionTracksTests {
+
+	private final MotionTracks tracks = new MotionTracks();
+
+	private MotionModel observed() {
+		MotionModel model = new MotionModel();
+		model.observe(3, 1);
+		return model;
+	}
+
+	@Test
+	public void startsNewTracks() {
+		MotionModel model = tracks.take("session", "vid_0000000001.jpg", "10,20,30,40");
+		assertFalse(model.canPredict());
+		assertNotSame(model, tracks.take("session", "vid_0000000001.jpg", "10,20,30,40"));
+	}
+
+	@Test
+	public void findsPositionsSentBackAsBounds() {
+		MotionModel model = observed();
+		tracks.put("session", "vid_0000000002.jpg", "[13, 21, 30, 40]", model);
+		assertSame(model, tracks.take("session", "vid_0000000002.jpg", "13,21,30,40"));
+
+		// A track is taken once
+		assertNotSame(model, tracks.take("session", "vid_0000000002.jpg", "13,21,30,40"));
+	}
+
+	@Test
+	public void roundsBoundsToWholePixels() {
+		MotionModel model = observed();
+		tracks.put("session", "vid_0000000002.jpg", "[13, 21, 30, 40]", model);
+		assertSame(model, tracks.take("session", "vid_0000000002.jpg", "12.6,20.5,30,39.7"));
+
+		MotionModel decimal = observed();
+		tracks.put("session", "vid_0000000002.jpg", "[13.2, 21, 30.4, 40]", decimal);
+		assertSame(decimal, tracks.take("session", "vid_0000000002.jpg", "13,21,30,40"));
+	}
+
+	@Test
+	public void keepsTracksApartBySessionAndFrame() {
+		MotionModel model = observed();
+		tracks.put("session", "vid_0000000002.jpg", "[13, 21, 30, 40]", model);
+		assertNotSame(model, tracks.take("other", "vid_0000000002.jpg", "13,21,30,40"));
+		assertNotSame(model, tracks.take("session", "vid_0000000003.jpg", "13,21,30,40"));
+		assertNotSame(model, tracks.take("session", "vid_0000000002.jpg", "14,21,30,40"));
+		assertSame(model, tracks.take("session", "vid_0000000002.jpg", "13,21,30,40"));
+	}
+
+}
@@ -0,0 +1,98 @@
+package edu.usc.teamcore.tagger.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.opencsv.CSVWriter;
+
+public class OptionFileIndexTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void indexesRecordsWithQuotedNewlines() throws Exception {
+		File file = folder.newFile("output.csv");
+		String[] first = { "vid1", "Mon Jan 02 10:00:00 PST 2017", "agent", "{\"a\": \"x,\ny\"}" };
+		String[] second = { "vid10", "Mon Jan 02 10:05:00 PST 2017", "agent", "{\"b\": \"q\\\"\\\\\"}" };
+		String[] third = { "vid1", "Mon Jan 02 10:10:00 PST 2017", "agent", "{\"c\": \"é\"}" };
+		try (CSVWriter writer = new CSVWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			writer.writeNext(first);
+			writer.writeNext(second);
+			writer.writeNext(third);
+		}
+
+		OptionFileIndex index = OptionFileIndex.build(file.toPath());
+		assertEquals(file.length(), index.getLength());
+		assertEquals(Arrays.asList(first[1], third[1]), index.list("vid1"));
+		assertEquals(Arrays.asList("vid1", "vid10"), Arrays.asList(index.fileNames().toArray()));
+		assertNull(index.find("vid1", second[1]));
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			assertArrayEquals(first, OptionFileIndex.read(channel, index.find("vid1", first[1])));
+			assertArrayEquals(third, OptionFileIndex.read(channel, index.find("vid1", third[1])));
+			assertArrayEquals(second, OptionFileIndex.read(channel, index.find("vid10", second[1])));
+		}
+	}
+
+	@Test
+	public void indexesMissingFileAsEmpty() throws Exception {
+		OptionFileIndex index = OptionFileIndex.build(new File(folder.getRoot(), "review.csv").toPath());
+		assertEquals(0, index.getLength());
+		assertEquals(0, index.list("vid1").size());
+	}
+
+	@Test
+	public void readersSeeOnlyFullyIndexedRecords() throws Exception {
+		OptionFileIndex index = OptionFileIndex.build(new File(folder.getRoot(), "review.csv").toPath());
+		int records = 20000;
+		AtomicBoolean writing = new AtomicBoolean(true);
+		AtomicReference<String> failure = new AtomicReference<>();
+		List<Thread> readers = new ArrayList<>();
+		for (int r = 0; r < 4; r++) {
+			Thread reader = new Thread(() -> {
+				while (writing.get() && failure.get() == null) {
+					long length = index.getLength();
+					List<String> times = index.list("vid" + (length % 3));
+					for (String time : times) {
+						if (index.find("vid" + (length % 3), time) == null) {
+							failure.set("Listed entry " + time + " is not indexed");
+						}
+					}
+				}
+			});
+			reader.start();
+			readers.add(reader);
+		}
+		for (int i = 0; i < records; i++) {
+			index.add("vid" + (i % 3), String.valueOf(i), i * 10L, 10);
+		}
+		writing.set(false);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		assertNull(failure.get());
+		assertEquals(records * 10L, index.getLength());
+		assertEquals(Arrays.asList("vid0", "vid1", "vid2"), new ArrayList<>(index.fileNames()));
+		assertEquals(records / 3 + 1, index.list("vid0").size());
+	}
+
+}
@@ -0,0 +1,276 @@
+package edu.usc.teamcore.tagger.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.opencsv.CSVWriter;
+
+public class OptionFileJournalTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Fails writes after a number of bytes, forces or truncates when told
+	 * to, and holds writes until a gate opens.
+	 */
+	private static class FaultyChannel extends FileChannel {
+
+		private final FileChannel delegate;
+
+		private volatile long bytesBeforeWriteFailure = Long.MAX_VALUE;
+		private volatile boolean failForce;
+		private volatile boolean failTruncate;
+
+		private final CountDownLatch writing = new CountDownLatch(1);
+		private volatile CountDownLatch writeGate;
+
+		private FaultyChannel(FileChannel delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException {
+			writing.countDown();
+			CountDownLatch gate = writeGate;
+			if (gate != null) {
+				try {
+					gate.await();
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			if (bytesBeforeWriteFailure <= 0) {
+				throw new IOException("Injected write failure");
+			}
+			if (src.remaining() > bytesBeforeWriteFailure) {
+				ByteBuffer head = src.duplicate();
+				head.limit(head.position() + (int) bytesBeforeWriteFailure);
+				int written = delegate.write(head, position);
+				src.position(src.position() + written);
+				bytesBeforeWriteFailure -= written;
+				return written;
+			}
+			int written = delegate.write(src, position);
+			bytesBeforeWriteFailure -= written;
+			return written;
+		}
+
+		@Override
+		public void force(boolean metaData) throws IOException {
+			if (failForce) {
+				throw new IOException("Injected force failure");
+			}
+			delegate.force(metaData);
+		}
+
+		@Override
+		public FileChannel truncate(long size) throws IOException {
+			if (failTruncate) {
+				throw new IOException("Injected truncate failure");
+			}
+			delegate.truncate(size);
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return delegate.size();
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			return delegate.read(dst);
+		}
+
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+			return delegate.read(dsts, offset, length);
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			return delegate.write(src);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			return delegate.write(srcs, offset, length);
+		}
+
+		@Override
+		public long position() throws IOException {
+			return delegate.position();
+		}
+
+		@Override
+		public FileChannel position(long newPosition) throws IOException {
+			delegate.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+			return delegate.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+			return delegate.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException {
+			return delegate.read(dst, position);
+		}
+
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+			return delegate.map(mode, position, size);
+		}
+
+		@Override
+		public FileLock lock(long position, long size, boolean shared) throws IOException {
+			return delegate.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+			return delegate.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws IOException {
+			delegate.close();
+		}
+
+	}
+
+	private static byte[] record(String... values) {
+		StringWriter out = new StringWriter();
+		try (CSVWriter writer = new CSVWriter(out)) {
+			writer.writeNext(values);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return out.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void assertFails(CompletableFuture<Void> future) throws InterruptedException {
+		assertFails(future, IOException.class);
+	}
+
+	private static void assertFails(CompletableFuture<Void> future, Class<?> cause) throws InterruptedException {
+		try {
+			future.get();
+			fail("Append did not fail");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), cause.isInstance(e.getCause()));
+		}
+	}
+
+	private static String[] read(Path file, OptionFileIndex.Entry entry) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return OptionFileIndex.read(channel, entry);
+		}
+	}
+
+	@Test
+	public void dropsTornBatches() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("output.csv");
+		FaultyChannel channel = new FaultyChannel(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+		String[] first = { "vid1", "t1", "agent", "{\"a\": \"x\"}" };
+		String[] torn = { "vid1", "t2", "agent", "{\"b\": \"unbalanced \"\" quote\"}" };
+		String[] unforced = { "vid1", "t3", "agent", "{\"c\": 1}" };
+		String[] last = { "vid1", "t4", "agent", "{\"d\": 2}" };
+		try (OptionFileJournal journal = new OptionFileJournal(file, channel, 16, 8, true, 1000)) {
+			journal.append("vid1", "t1", record(first)).get();
+			long length = file.toFile().length();
+
+			// Fail inside the quoted data, leaving a quote open
+			channel.bytesBeforeWriteFailure = 30;
+			assertFails(journal.append("vid1", "t2", record(torn)));
+			assertEquals(length, file.toFile().length());
+
+			channel.bytesBeforeWriteFailure = Long.MAX_VALUE;
+			channel.failForce = true;
+			assertFails(journal.append("vid1", "t3", record(unforced)));
+			assertEquals(length, file.toFile().length());
+
+			channel.failForce = false;
+			journal.append("vid1", "t4", record(last)).get();
+			assertEquals(Arrays.asList("t1", "t4"), journal.getIndex().list("vid1"));
+		}
+
+		OptionFileIndex rebuilt = OptionFileIndex.build(file);
+		assertEquals(Arrays.asList("t1", "t4"), rebuilt.list("vid1"));
+		assertNull(rebuilt.find("vid1", "t2"));
+		assertArrayEquals(first, read(file, rebuilt.find("vid1", "t1")));
+		assertArrayEquals(last, read(file, rebuilt.find("vid1", "t4")));
+	}
+
+	@Test
+	public void failsLaterRecordsWhenTornBatchCannotBeDropped() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("review.csv");
+		FaultyChannel channel = new FaultyChannel(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+		try (OptionFileJournal journal = new OptionFileJournal(file, channel, 16, 8, true, 1000)) {
+			channel.bytesBeforeWriteFailure = 5;
+			channel.failTruncate = true;
+			assertFails(journal.append("vid1", "t1", record("vid1", "t1", "agent", "{}")));
+
+			channel.bytesBeforeWriteFailure = Long.MAX_VALUE;
+			channel.failTruncate = false;
+			assertFails(journal.append("vid1", "t2", record("vid1", "t2", "agent", "{}")));
+			assertEquals(0, journal.getIndex().list("vid1").size());
+		}
+	}
+
+	@Test
+	public void failsRecordsThatFindTheQueueFull() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("output.csv");
+		FaultyChannel channel = new FaultyChannel(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+		channel.writeGate = new CountDownLatch(1);
+		try (OptionFileJournal journal = new OptionFileJournal(file, channel, 1, 1, true, 50)) {
+			CompletableFuture<Void> writing = journal.append("vid1", "t1", record("vid1", "t1", "agent", "{}"));
+			channel.writing.await();
+			CompletableFuture<Void> queued = journal.append("vid1", "t2", record("vid1", "t2", "agent", "{}"));
+
+			// The writer is stuck and the queue is full, so the append gives up
+			long start = System.nanoTime();
+			assertFails(journal.append("vid1", "t3", record("vid1", "t3", "agent", "{}")), JournalFullException.class);
+			assertTrue(System.nanoTime() - start < 5_000_000_000L);
+
+			channel.writeGate.countDown();
+			writing.get();
+			queued.get();
+			assertEquals(Arrays.asList("t1", "t2"), journal.getIndex().list("vid1"));
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package edu.usc.teamcore.tagger.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TrackCodecTests {
+
+	private final TrackCodec codec = new TrackCodec();
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private void assertRoundTrip(String payload) throws Exception {
+		String encoded = codec.encode(payload);
+		assertEquals(mapper.readTree(payload), mapper.readTree(codec.decode(encoded)));
+	}
+
+	@Test
+	public void collapsesUnchangedFramesIntoRuns() throws Exception {
+		StringBuilder payload = new StringBuilder("{");
+		for (int frame = 33; frame < 83; frame++) {
+			payload.append(frame == 33 ? "" : ",").append("\"").append(frame).append("\":{")
+				   .append("\"172,148.5,60,74\":\"poacher\",")
+				   .append("\"").append(frame < 60 ? 349 : 349 + frame).append(",201.5,89,108\":\"animal\"}");
+		}
+		payload.append(",\"90\":{}}");
+		String encoded = codec.encode(payload.toString());
+		assertTrue(encoded.contains("[\"172,148.5,60,74\",50]"));
+		assertTrue(encoded.contains("[\"349,201.5,89,108\",27]"));
+		assertTrue(encoded.length() * 4 < payload.length());
+		assertRoundTrip(payload.toString());
+	}
+
+	@Test
+	public void keepsPaddedFrameFileNames() throws Exception {
+		assertRoundTrip("{\"0000000009_0000000000_0000000008.jpg\":{\"195.5,155,48,38\":\"poacher\"},"
+				+ "\"0000000009_0000000000_0000000009.jpg\":{\"196.5,155,48,38\":\"poacher\",\"10,10,5,5\":\"animal\"},"
+				+ "\"0000000009_0000000000_0000000010.jpg\":{}}");
+	}
+
+	@Test
+	public void leavesOtherPayloadsUnchanged() throws Exception {
+		String mixed = "{\"1\":{\"1,1,1,1\":\"poacher\"},\"01\":{\"2,2,2,2\":\"poacher\"}}";
+		assertEquals(mixed, codec.encode(mixed));
+		assertEquals(mixed, codec.decode(mixed));
+		assertEquals("not json", codec.encode("not json"));
+		String encoded = codec.encode("{\"5\":{\"1,1,1,1\":\"poacher\"}}");
+		assertEquals(encoded, codec.encode(encoded));
+	}
+
+}